@@ -0,0 +1,116 @@
+/**
+ * A point filter that mixes the color channels of every pixel with a
+ * color matrix. Each new channel is a weighted sum of the old red, green
+ * and blue values, plus an optional offset:
+ *
+ *     red'   = m[0][0] * red + m[0][1] * green + m[0][2] * blue + m[0][3]
+ *     green' = m[1][0] * red + m[1][1] * green + m[1][2] * blue + m[1][3]
+ *     blue'  = m[2][0] * red + m[2][1] * green + m[2][2] * blue + m[2][3]
+ *
+ * Results are rounded down and limited to 0-255. The matrix is converted
+ * to fixed-point integers once, so no floating point arithmetic is done
+ * per pixel, and a filter has no state that changes while filtering (it
+ * can safely be used by several threads at once). The fixed-point numbers
+ * use as many fraction bits (up to 24) as the matrix allows while every
+ * sum still fits into an int, so that the loop can use SIMD instructions
+ * (see PixelKernels).
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.2
+ */
+public class ColorMatrixFilter extends PointFilter
+{
+    // the classic sepia tone matrix
+    public static final double[][] SEPIA = {
+        { 0.393, 0.769, 0.189 },
+        { 0.349, 0.686, 0.168 },
+        { 0.272, 0.534, 0.131 }
+    };
+
+    // gray of the same average brightness
+    public static final double[][] GRAYSCALE = {
+        { 1.0 / 3, 1.0 / 3, 1.0 / 3 },
+        { 1.0 / 3, 1.0 / 3, 1.0 / 3 },
+        { 1.0 / 3, 1.0 / 3, 1.0 / 3 }
+    };
+
+    // fixed-point numbers have at most this many bits after the binary point
+    private static final int MAX_FRACTION_BITS = 24;
+    // added before rounding down, to make up for the rounding of the
+    // weights (each is off by at most half a unit per channel value), so
+    // that exact results (like 3 * 1/3) are never rounded down to the
+    // next lower value
+    private static final int BIAS = 3 * 255 / 2 + 2;
+
+    // the matrix in fixed point, row by row: 3 weights and an offset
+    // (the offset includes the bias)
+    private final int[] weights = new int[12];
+    // the number of fraction bits of the weights
+    private final int shift;
+
+    /**
+     * Create a color matrix filter.
+     * @param name The name of the filter.
+     * @param matrix A matrix of 3 rows with 3 weights each, optionally
+     *               followed by an offset (in the range of a channel value).
+     */
+    public ColorMatrixFilter(String name, double[][] matrix)
+    {
+        super(name);
+        if(matrix.length != 3) {
+            throw new IllegalArgumentException("color matrix must have 3 rows");
+        }
+        // the largest sum (before the bias) that a row can produce
+        double largest = 0;
+        for(int i = 0; i < 3; i++) {
+            if(matrix[i].length != 3 && matrix[i].length != 4) {
+                throw new IllegalArgumentException("color matrix rows must have 3 or 4 entries");
+            }
+            double sum = 0;
+            for(int j = 0; j < matrix[i].length; j++) {
+                sum += Math.abs(matrix[i][j]) * (j < 3 ? 255 : 1);
+            }
+            largest = Math.max(largest, sum);
+        }
+        int bits = MAX_FRACTION_BITS;
+        while(bits > 0 && (largest + 1) * (1 << bits) + BIAS >= Integer.MAX_VALUE) {
+            bits--;
+        }
+        if(bits < 8) {
+            throw new IllegalArgumentException("color matrix entries are too large");
+        }
+        shift = bits;
+        for(int i = 0; i < 3; i++) {
+            for(int j = 0; j < matrix[i].length; j++) {
+                weights[i * 4 + j] = (int) Math.round(matrix[i][j] * (1 << bits));
+            }
+            weights[i * 4 + 3] += BIAS;
+        }
+    }
+
+    /**
+     * Apply the color matrix to a range of packed pixels, in place.
+     *
+     * @param  pixels  The packed pixels.
+     * @param  from    The index of the first pixel to change.
+     * @param  to      The index after the last pixel to change.
+     */
+    public void filterPixels(int[] pixels, int from, int to)
+    {
+        if(PixelKernels.isEnabled()) {
+            PixelKernels.colorMatrix(pixels, from, to, weights, shift);
+            return;
+        }
+        final int[] w = weights;
+        for(int i = from; i < to; i++) {
+            int pix = pixels[i];
+            int red = OFImage.red(pix);
+            int green = OFImage.green(pix);
+            int blue = OFImage.blue(pix);
+            int r = (w[0] * red + w[1] * green + w[2] * blue + w[3]) >> shift;
+            int g = (w[4] * red + w[5] * green + w[6] * blue + w[7]) >> shift;
+            int b = (w[8] * red + w[9] * green + w[10] * blue + w[11]) >> shift;
+            pixels[i] = OFImage.rgb(OFImage.clamp(r), OFImage.clamp(g), OFImage.clamp(b));
+        }
+    }
+}
@@ -4,8 +4,11 @@
  * @author Michael Kölling and David J. Barnes.
  * @version 1.0
  */
-public class DarkerFilter extends Filter
+public class DarkerFilter extends LookupFilter
 {
+    // the scale factor used by java.awt.Color to darken a color
+    private static final double FACTOR = 0.7;
+
     /**
      * Constructor for objects of class DarkerFilter.
      * @param name The name of the filter.
@@ -16,18 +19,17 @@ public class DarkerFilter extends Filter
     }
 
     /**
-     * Apply this filter to an image.
+     * Create the lookup table for this filter: every channel is scaled
+     * down the same way Color.darker() does it.
      * 
-     * @param  image  The image to be changed by this filter.
+     * @return The lookup table of this filter.
      */
-    public void apply(OFImage image)
+    protected LookupTable createLookupTable()
     {
-        int height = image.getHeight();
-        int width = image.getWidth();
-        for(int y = 0; y < height; y++) {
-            for(int x = 0; x < width; x++) {
-                image.setPixel(x, y, image.getPixel(x, y).darker());
-            }
+        int[] table = new int[LookupTable.CHANNEL_SIZE];
+        for(int value = 0; value < table.length; value++) {
+            table[value] = (int)(value * FACTOR);
         }
+        return LookupTable.perChannel(table);
     }
 }
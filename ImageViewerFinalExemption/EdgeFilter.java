@@ -1,143 +1,105 @@
-import java.awt.Color;
-
-import java.util.List;
-import java.util.ArrayList;
-
 /**
  * An image filter to detect edges and highlight them, a bit like 
  * a colored pencil drawing.
  * 
+ * For each channel, a pixel gets darker the more the values in a square
+ * window around it differ. The window is 3x3 pixels by default; larger
+ * windows give thicker edges and cost no more per pixel.
+ * 
  * @author Michael Kölling and David J. Barnes.
- * @version 1.0
+ * @version 2.0
  */
 public class EdgeFilter extends Filter
 {
     private static final int TOLERANCE = 20;
-    
-    private OFImage original;
-    private int width;
-    private int height;
+
+    private final int radius;
 
     /**
-     * Constructor for objects of class EdgeFilter.
+     * Constructor for objects of class EdgeFilter, comparing each pixel
+     * with its direct neighbors.
      * @param name The name of the filter.
      */
     public EdgeFilter(String name)
     {
-        super(name);
+        this(name, 1);
     }
 
     /**
-     * Apply this filter to an image.
-     * 
-     * @param  image  The image to be changed by this filter.
+     * Constructor for objects of class EdgeFilter with a given window.
+     * @param name The name of the filter.
+     * @param radius The distance (in pixels) of the farthest neighbors
+     *               compared; the window is 2 * radius + 1 pixels wide.
      */
-    public void apply(OFImage image)
+    public EdgeFilter(String name, int radius)
     {
-        original = new OFImage(image);
-        width = original.getWidth();
-        height = original.getHeight();
-        
-        for(int y = 0; y < height; y++) {
-            for(int x = 0; x < width; x++) {
-                image.setPixel(x, y, edge(x, y));
-            }
+        super(name);
+        if(radius < 1) {
+            throw new IllegalArgumentException("radius must be at least 1");
         }
+        this.radius = radius;
     }
 
     /**
-     * Return a new color that is the smoothed color of a given
-     * position. The "smoothed color" is the color value that is the
-     * average of this pixel and all the adjacent pixels.
-     * @param xpos The x position of the pixel.
-     * @param ypos The y position of the pixel.
-     * @return The smoothed color.
+     * Return the radius of the window of this filter.
+     * 
+     * @return The window radius.
      */
-    private Color edge(int xpos, int ypos)
+    public int getRadius()
     {
-        List<Color> pixels = new ArrayList<>(9);
-        
-        for(int y = ypos-1; y <= ypos+1; y++) {
-            for(int x = xpos-1; x <= xpos+1; x++) {
-                if( x >= 0 && x < width && y >= 0 && y < height ) {
-                    pixels.add(original.getPixel(x, y));
-                }
-            }
-        }
-
-        return new Color(255 - diffRed(pixels), 255 - diffGreen(pixels), 255 - diffBlue(pixels));
+        return radius;
     }
 
     /**
-     * @param pixels The list of pixels to be averaged.
-     * @return The average of all the red values in the given list of pixels.
+     * Edge detection reads up to radius rows above and below each pixel.
+     * 
+     * @param  width   The width of the image.
+     * @param  height  The height of the image.
+     * @return The number of extra rows needed on either side of a band.
      */
-    private int diffRed(List<Color> pixels)
+    public int getHalo(int width, int height)
     {
-        int max = 0;
-        int min = 255;
-        for(Color color : pixels) {
-            int val = color.getRed();
-            if(val > max) {
-                max = val;
-            }
-            if(val < min) {
-                min = val;
-            }
-        }
-        int difference = max - min - TOLERANCE;
-        if(difference < 0) {
-            difference = 0;
-        }
-        return difference;
+        return radius;
     }
 
     /**
-     * @param pixels The list of pixels to be averaged.
-     * @return The average of all the green values in the given list of pixels.
+     * Filter a band of rows of an image.
+     * 
+     * @param  source   The packed pixels to read from.
+     * @param  sourceY  The image row of the first row in source.
+     * @param  target   The packed pixels of the image, to be changed.
+     * @param  width    The width of the image.
+     * @param  height   The height of the image.
+     * @param  fromY    The first row to change.
+     * @param  toY      The row after the last row to change.
      */
-    private int diffGreen(List<Color> pixels)
+    protected void filterRows(int[] source, int sourceY, int[] target,
+                              int width, int height, int fromY, int toY)
     {
-        int max = 0;
-        int min = 255;
-        for(Color color : pixels) {
-            int val = color.getGreen();
-            if(val > max) {
-                max = val;
-            }
-            if(val < min) {
-                min = val;
-            }
+        int[] max = MinMaxKernel.filter(source, sourceY, width, height, fromY, toY, radius, true);
+        int[] min = MinMaxKernel.filter(source, sourceY, width, height, fromY, toY, radius, false);
+        int offset = fromY * width;
+        for(int i = 0; i < max.length; i++) {
+            int high = max[i];
+            int low = min[i];
+            target[offset + i] = OFImage.rgb(255 - diff(OFImage.red(high), OFImage.red(low)),
+                                             255 - diff(OFImage.green(high), OFImage.green(low)),
+                                             255 - diff(OFImage.blue(high), OFImage.blue(low)));
         }
-        int difference = max - min - TOLERANCE;
-        if(difference < 0) {
-            difference = 0;
-        }
-        return difference;
     }
 
     /**
-     * @param pixels The list of pixels to be averaged.
-     * @return The average of all the blue values in the given list of pixels.
+     * @param max The largest value of a channel in the neighborhood.
+     * @param min The smallest value of a channel in the neighborhood.
+     * @return The difference between max and min, less the tolerance
+     *         (and never below 0).
      */
-    private int diffBlue(List<Color> pixels)
+    private int diff(int max, int min)
     {
-        int max = 0;
-        int min = 255;
-        for(Color color : pixels) {
-            int val = color.getBlue();
-            if(val > max) {
-                max = val;
-            }
-            if(val < min) {
-                min = val;
-            }
-        }
         int difference = max - min - TOLERANCE;
         if(difference < 0) {
             difference = 0;
         }
         return difference;
     }
-
 }
@@ -1,10 +1,23 @@
 /**
  * Filter is an abstract superclass for all image filters in this
- * application. Filters can be applied to OFImages by invoking the apply 
+ * application. Filters can be applied to OFImages by invoking the apply
  * method.
- * 
+ *
+ * Subclasses do their work in filterRows, which changes one band of
+ * image rows at a time. This lets a FilterExecutor split an image into
+ * bands and filter them on several processor cores at once. A filter
+ * that reads pixels near the one it is changing (like SmoothFilter)
+ * says how far it looks by overriding getHalo; it then reads from a
+ * copy of the original rows, so that the result never depends on how
+ * the image was split.
+ *
+ * A filter applied while a FilterProgress runs an operation on the same
+ * thread reports how far it has got, and can be cancelled part way.
+ * filterRows may therefore be called for parts of a band, one after
+ * another.
+ *
  * @author Michael Kölling and David J. Barnes.
- * @version 1.0
+ * @version 2.2
  */
 public abstract class Filter
 {
@@ -13,26 +26,89 @@ public abstract class Filter
     /**
      * Create a new filter with a given name.
      * @param name The name of the filter.
-     */ 
+     */
     public Filter(String name)
     {
         this.name = name;
     }
-    
+
     /**
      * Return the name of this filter.
-     * 
+     *
      * @return  The name of this filter.
      */
     public String getName()
     {
         return name;
     }
-    
+
     /**
-     * Apply this filter to an image.
-     * 
+     * Apply this filter to an image, using the default executor.
+     *
      * @param  image  The image to be changed by this filter.
      */
-    public abstract void apply(OFImage image);
+    public void apply(OFImage image)
+    {
+        apply(image, FilterExecutor.getDefault());
+    }
+
+    /**
+     * Apply this filter to an image, using a given executor.
+     *
+     * @param  image     The image to be changed by this filter.
+     * @param  executor  The executor that runs the filter.
+     */
+    public void apply(OFImage image, FilterExecutor executor)
+    {
+        executor.execute(this, image);
+    }
+
+    /**
+     * Return whether this filter changes every pixel on its own, the same
+     * way wherever the pixel lies. Such a filter gives the same result
+     * whether it is applied before or after the image is turned or
+     * mirrored, so it can be applied to an image that is only shown
+     * turned (see Orientation) without moving its pixels first.
+     *
+     * @return true if this filter only looks at each pixel on its own.
+     */
+    public boolean isPointwise()
+    {
+        return false;
+    }
+
+    /**
+     * Return the number of rows above and below a pixel that this filter
+     * reads to compute the new value of that pixel. Filters that only
+     * read the pixel itself, or only pixels of the same row, return 0 and
+     * are then allowed to change the image in place.
+     *
+     * @param  width   The width of the image.
+     * @param  height  The height of the image.
+     * @return The number of extra rows needed on either side of a band.
+     */
+    public int getHalo(int width, int height)
+    {
+        return 0;
+    }
+
+    /**
+     * Filter a band of rows of an image.
+     *
+     * If this filter's halo is 0, source is the image's own pixel array
+     * (the same array as target) and sourceY is 0. Otherwise source is a
+     * copy of the original image rows starting at row sourceY, covering
+     * the band plus the halo rows on either side (as far as they lie
+     * inside the image).
+     *
+     * @param  source   The packed pixels to read from.
+     * @param  sourceY  The image row of the first row in source.
+     * @param  target   The packed pixels of the image, to be changed.
+     * @param  width    The width of the image.
+     * @param  height   The height of the image.
+     * @param  fromY    The first row to change.
+     * @param  toY      The row after the last row to change.
+     */
+    protected abstract void filterRows(int[] source, int sourceY, int[] target,
+                                       int width, int height, int fromY, int toY);
 }
@@ -0,0 +1,324 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A FilterExecutor applies filters to images, splitting each image into
+ * bands of rows that are filtered in parallel on a fork/join pool.
+ *
+ * For filters with a halo (filters that read neighboring rows), every
+ * band first copies its rows plus the halo rows, and only when all bands
+ * have their copy does any band start writing. The result is therefore
+ * exactly the same as filtering the whole image in one go.
+ *
+ * The default executor uses one thread per processor core. This can be
+ * changed with the system property "imageviewer.threads", or by calling
+ * setDefault. An executor that is shut down (as the old default is) lets
+ * the filters running on it finish first.
+ *
+ * When a filter is applied as part of an operation followed by a
+ * FilterProgress, each band is filtered a few rows at a time, reporting
+ * the rows done and stopping early if the operation is cancelled. Each
+ * step is many times taller than the filter's halo, so that setting up
+ * every call of filterRows costs little.
+ *
+ * The rows of every band that was written are reported to the image with
+ * markChanged, so the image keeps its snapshot (see TiledRaster) and the
+ * next snapshot only looks at the tiles of those rows.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.5
+ */
+public class FilterExecutor
+{
+    // bands per thread, so that uneven bands still keep all threads busy
+    private static final int BANDS_PER_THREAD = 4;
+    // bands are never smaller than this, to keep the overhead low
+    private static final int MIN_BAND_PIXELS = 16 * 1024;
+    // the number of pixels filtered between two progress reports
+    private static final int STEP_PIXELS = 256 * 1024;
+    // the least number of halos in the rows filtered between two progress
+    // reports; each call of filterRows may read its halo again (SmoothFilter
+    // sums the rows of its window first), which must stay a small part of
+    // the work
+    private static final int STEP_HALOS = 16;
+
+    private static FilterExecutor defaultExecutor =
+        new FilterExecutor(Integer.getInteger("imageviewer.threads",
+                                              Runtime.getRuntime().availableProcessors()));
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    // the calls of execute running, and whether the threads are to be
+    // shut down once none is
+    private int running;
+    private boolean stopping;
+
+    /**
+     * Create an executor that uses a given number of threads.
+     * @param parallelism The number of threads; 1 filters on the calling thread.
+     */
+    public FilterExecutor(int parallelism)
+    {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        if(parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        else {
+            pool = null;
+        }
+    }
+
+    /**
+     * Return the executor used by Filter.apply(OFImage).
+     * @return The default executor.
+     */
+    public static synchronized FilterExecutor getDefault()
+    {
+        return defaultExecutor;
+    }
+
+    /**
+     * Set the executor used by Filter.apply(OFImage). The previous default
+     * executor is shut down once the filters running on it are done.
+     * @param executor The new default executor.
+     */
+    public static synchronized void setDefault(FilterExecutor executor)
+    {
+        if(executor != defaultExecutor) {
+            defaultExecutor.shutdown();
+            defaultExecutor = executor;
+        }
+    }
+
+    /**
+     * Return the number of threads this executor uses.
+     * @return The parallelism level.
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Apply a filter to an image.
+     * @param filter The filter to apply.
+     * @param image The image to be changed.
+     */
+    public void execute(Filter filter, OFImage image)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int halo = Math.max(0, filter.getHalo(width, height));
+        FilterProgress progress = FilterProgress.getCurrent();
+        if(progress != null) {
+            progress.checkCancelled();
+            progress.start(height);
+        }
+
+        boolean parallel = begin();
+        try {
+            filterBands(filter, image, progress, halo, parallel);
+        }
+        finally {
+            end();
+        }
+    }
+
+    /**
+     * Shut down the threads of this executor, as soon as the filters
+     * running on it are done. Filters applied with this executor
+     * afterwards run on the calling thread.
+     */
+    public synchronized void shutdown()
+    {
+        stopping = true;
+        if(running == 0 && pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    // ---- support methods ----
+
+    /**
+     * Record that a filter starts running.
+     *
+     * @return true if it may use the threads of this executor.
+     */
+    private synchronized boolean begin()
+    {
+        running++;
+        return pool != null && !stopping;
+    }
+
+    /**
+     * Record that a filter has finished, and shut the threads down if
+     * that was waited for.
+     */
+    private synchronized void end()
+    {
+        running--;
+        if(running == 0 && stopping && pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Split an image into bands and filter them, in parallel or on the
+     * calling thread.
+     */
+    private void filterBands(Filter filter, OFImage image, FilterProgress progress,
+                             int halo, boolean parallel)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getTrackedPixelData();
+        int bandCount = 1;
+        if(parallel) {
+            int maxBands = (int) Math.max(1, (long) width * height / MIN_BAND_PIXELS);
+            bandCount = Math.min(Math.min(parallelism * BANDS_PER_THREAD, maxBands), height);
+        }
+        Band[] bands = new Band[Math.max(bandCount, 1)];
+        for(int i = 0; i < bands.length; i++) {
+            bands[i] = new Band(filter, progress, pixels, width, height, halo,
+                                (int) ((long) height * i / bands.length),
+                                (int) ((long) height * (i + 1) / bands.length));
+        }
+
+        try {
+            if(bands.length == 1) {
+                bands[0].copySource();
+                bands[0].filter();
+            }
+            else {
+                if(halo > 0) {
+                    pool.invoke(new BandTask(bands, 0, bands.length, true));
+                }
+                pool.invoke(new BandTask(bands, 0, bands.length, false));
+            }
+        }
+        finally {
+            // also when cancelled: the bands started may be partly written
+            for(Band band : bands) {
+                if(band.written) {
+                    image.markChanged(0, band.fromY, width, band.toY - band.fromY);
+                }
+            }
+        }
+    }
+
+    /**
+     * One band of rows of an image, together with its copy of the
+     * original rows it reads.
+     */
+    private static class Band
+    {
+        private final Filter filter;
+        private final FilterProgress progress;
+        private final int[] pixels;
+        private final int width, height, halo;
+        private final int fromY, toY;
+        private int[] source;
+        private int sourceY;
+        // set once filtering starts, so some rows may have been written
+        private volatile boolean written;
+
+        public Band(Filter filter, FilterProgress progress, int[] pixels,
+                    int width, int height, int halo, int fromY, int toY)
+        {
+            this.filter = filter;
+            this.progress = progress;
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.halo = halo;
+            this.fromY = fromY;
+            this.toY = toY;
+        }
+
+        /**
+         * Copy the rows this band reads (its own rows plus the halo), or
+         * read directly from the image if the filter has no halo.
+         */
+        public void copySource()
+        {
+            if(halo == 0) {
+                source = pixels;
+                sourceY = 0;
+            }
+            else {
+                sourceY = Math.max(0, fromY - halo);
+                int endY = Math.min(height, toY + halo);
+                source = new int[(endY - sourceY) * width];
+                System.arraycopy(pixels, sourceY * width, source, 0, source.length);
+            }
+        }
+
+        /**
+         * Filter the rows of this band; a few rows at a time if the
+         * progress is followed.
+         */
+        public void filter()
+        {
+            if(source == null) {
+                copySource();
+            }
+            written = true;
+            if(progress == null) {
+                filter.filterRows(source, sourceY, pixels, width, height, fromY, toY);
+            }
+            else {
+                long rows = Math.max(STEP_PIXELS / Math.max(1, width), (long) STEP_HALOS * halo);
+                int step = (int) Math.max(1, Math.min(rows, toY - fromY));
+                for(int y = fromY; y < toY; y += step) {
+                    progress.checkCancelled();
+                    int endY = Math.min(y + step, toY);
+                    filter.filterRows(source, sourceY, pixels, width, height, y, endY);
+                    progress.advance(endY - y);
+                }
+            }
+            source = null;
+        }
+    }
+
+    /**
+     * A fork/join task that runs one phase (copying or filtering) for a
+     * range of bands, splitting the range in half until single bands
+     * remain.
+     */
+    private static class BandTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Band[] bands;
+        private final int from, to;
+        private final boolean copyPhase;
+
+        public BandTask(Band[] bands, int from, int to, boolean copyPhase)
+        {
+            this.bands = bands;
+            this.from = from;
+            this.to = to;
+            this.copyPhase = copyPhase;
+        }
+
+        protected void compute()
+        {
+            if(to - from == 1) {
+                if(copyPhase) {
+                    bands[from].copySource();
+                }
+                else {
+                    bands[from].filter();
+                }
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BandTask(bands, from, middle, copyPhase),
+                          new BandTask(bands, middle, to, copyPhase));
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A FilterPipeline is an edit (see ImageOperation) made of a sequence of
+ * filters that are applied one after the other.
+ *
+ * When the pipeline is created, every run of consecutive point filters
+ * (filters whose result for a pixel depends only on that pixel) is
+ * compiled into a single stage: the tables of neighboring lookup filters
+ * are combined where possible, and the remaining point filters are
+ * applied block by block, so that the whole run needs only one pass over
+ * the image memory. Neighborhood
+ * filters (like SmoothFilter or EdgeFilter) are applied as stages of
+ * their own.
+ *
+ * A pipeline is not a Filter itself: each of its stages may need its own
+ * halo, so it cannot filter a band of rows in one go. It is applied stage
+ * by stage, each stage split into bands by the executor.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.3
+ */
+public class FilterPipeline implements ImageOperation
+{
+    // the number of pixels processed by all tables of a fused stage
+    // before moving on; small enough to stay in the processor cache
+    private static final int BLOCK_SIZE = 4096;
+
+    private String name;
+    private List<Filter> filters;
+    private List<Filter> stages;
+
+    /**
+     * Create a pipeline from a list of filters.
+     * @param name The name of the pipeline.
+     * @param filters The filters to apply, in order.
+     */
+    public FilterPipeline(String name, List<Filter> filters)
+    {
+        this.name = name;
+        this.filters = new ArrayList<>(filters);
+        stages = compile(this.filters);
+    }
+
+    /**
+     * Create a pipeline from a number of filters.
+     * @param name The name of the pipeline.
+     * @param filters The filters to apply, in order.
+     */
+    public FilterPipeline(String name, Filter... filters)
+    {
+        this(name, Arrays.asList(filters));
+    }
+
+    /**
+     * Return the name of this pipeline.
+     *
+     * @return  The name of this pipeline.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Return the filters of this pipeline, in the order they are applied.
+     *
+     * @return The filters of this pipeline.
+     */
+    public List<Filter> getFilters()
+    {
+        return new ArrayList<>(filters);
+    }
+
+    /**
+     * Return the number of passes over the image that this pipeline
+     * makes, after fusing its point filters.
+     *
+     * @return The number of stages of this pipeline.
+     */
+    public int getStageCount()
+    {
+        return stages.size();
+    }
+
+    /**
+     * @return true if every filter of this pipeline only looks at each
+     *         pixel on its own.
+     */
+    public boolean isPointwise()
+    {
+        for(Filter filter : filters) {
+            if(!filter.isPointwise()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply this pipeline to an image, using the default executor.
+     *
+     * @param  image  The image to be changed by this pipeline.
+     * @return The same image, changed.
+     */
+    public OFImage apply(OFImage image)
+    {
+        return apply(image, FilterExecutor.getDefault());
+    }
+
+    /**
+     * Apply this pipeline to an image, one stage after the other.
+     *
+     * @param  image     The image to be changed by this pipeline.
+     * @param  executor  The executor that runs each stage.
+     * @return The same image, changed.
+     */
+    public OFImage apply(OFImage image, FilterExecutor executor)
+    {
+        for(Filter stage : stages) {
+            stage.apply(image, executor);
+        }
+        return image;
+    }
+
+    /**
+     * Turn a list of filters into a list of stages, fusing every run of
+     * point filters into one stage.
+     */
+    private static List<Filter> compile(List<Filter> filters)
+    {
+        List<Filter> stages = new ArrayList<>();
+        List<PointFilter> run = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+
+        for(Filter filter : filters) {
+            if(filter instanceof PointFilter) {
+                PointFilter point = (PointFilter) filter;
+                int last = run.size() - 1;
+                if(last >= 0 && point instanceof LookupFilter
+                             && run.get(last) instanceof LookupFilter) {
+                    LookupTable combined = ((LookupFilter) run.get(last)).getLookupTable()
+                        .then(((LookupFilter) point).getLookupTable());
+                    if(combined != null) {
+                        point = new TableFilter(combined);
+                        run.remove(last);
+                    }
+                }
+                run.add(point);
+                names.add(filter.getName());
+            }
+            else {
+                if(!run.isEmpty()) {
+                    stages.add(new FusedStage(String.join(" + ", names), run));
+                    run = new ArrayList<>();
+                    names = new ArrayList<>();
+                }
+                stages.add(filter);
+            }
+        }
+        if(!run.isEmpty()) {
+            stages.add(new FusedStage(String.join(" + ", names), run));
+        }
+        return stages;
+    }
+
+    /**
+     * A stage that applies a run of point filters in one pass over the
+     * image.
+     */
+    private static class FusedStage extends Filter
+    {
+        private final PointFilter[] filters;
+
+        /**
+         * Create a fused stage from a run of point filters (with their
+         * lookup tables already combined).
+         */
+        public FusedStage(String name, List<PointFilter> filters)
+        {
+            super(name);
+            this.filters = filters.toArray(new PointFilter[0]);
+        }
+
+        /**
+         * Apply all filters to a band of rows, one cache-sized block at a
+         * time.
+         */
+        protected void filterRows(int[] source, int sourceY, int[] target,
+                                  int width, int height, int fromY, int toY)
+        {
+            int end = toY * width;
+            for(int from = fromY * width; from < end; from += BLOCK_SIZE) {
+                int to = Math.min(from + BLOCK_SIZE, end);
+                for(PointFilter filter : filters) {
+                    filter.filterPixels(target, from, to);
+                }
+            }
+        }
+    }
+
+    /**
+     * A lookup filter for a table made by combining the tables of several
+     * lookup filters.
+     */
+    private static class TableFilter extends LookupFilter
+    {
+        private final LookupTable table;
+
+        /**
+         * Create a filter for a combined table.
+         */
+        public TableFilter(LookupTable table)
+        {
+            super("combined");
+            this.table = table;
+        }
+
+        /**
+         * Return the combined table.
+         */
+        protected LookupTable createLookupTable()
+        {
+            return table;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A FilterProgress follows an operation (see ImageOperation) while it
+ * runs: how far the filters it applies have got, and whether it should
+ * stop.
+ *
+ * While an operation is run by a FilterProgress, every filter it applies
+ * on that thread (also the kernels of Orientation and Resampler, which
+ * are filters too) reports the rows it has done, and checks every few
+ * rows whether the operation has been cancelled. When it has, the filter
+ * stops with a CancellationException, leaving the image partly filtered.
+ *
+ * An operation may apply several filters one after another; the
+ * percentage done is then that of the filter currently running.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.0
+ */
+public class FilterProgress
+{
+    // The progress of the operation running on each thread, if any
+    private static final ThreadLocal<FilterProgress> current = new ThreadLocal<>();
+
+    private final AtomicLong rowsDone;
+    private volatile long rows;
+    private volatile boolean cancelled;
+
+    /**
+     * Create a progress for an operation that has not started yet.
+     */
+    public FilterProgress()
+    {
+        rowsDone = new AtomicLong();
+        rows = 0;
+        cancelled = false;
+    }
+
+    /**
+     * Return the progress of the operation running on this thread.
+     *
+     * @return The progress, or null if the thread is not running an
+     *         operation through a FilterProgress.
+     */
+    public static FilterProgress getCurrent()
+    {
+        return current.get();
+    }
+
+    /**
+     * Apply an operation to an image on this thread, following it with
+     * this progress.
+     *
+     * @param  operation  The operation to apply.
+     * @param  image      The image to apply it to.
+     * @return The result of the operation.
+     * @throws CancellationException if the operation was cancelled.
+     */
+    public OFImage run(ImageOperation operation, OFImage image)
+    {
+        checkCancelled();
+        FilterProgress outer = current.get();
+        current.set(this);
+        try {
+            return operation.apply(image);
+        }
+        finally {
+            current.set(outer);
+        }
+    }
+
+    /**
+     * Ask the operation to stop. It stops the next time one of its
+     * filters checks (see checkCancelled).
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if the operation has been cancelled.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Stop the operation if it has been cancelled.
+     *
+     * @throws CancellationException if the operation was cancelled.
+     */
+    public void checkCancelled()
+    {
+        if(cancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Start following a filter that changes a number of rows.
+     *
+     * @param rows  The number of rows the filter changes.
+     */
+    public void start(long rows)
+    {
+        rowsDone.set(0);
+        this.rows = rows;
+    }
+
+    /**
+     * Record that some rows have been changed.
+     *
+     * @param count  The number of rows.
+     */
+    public void advance(long count)
+    {
+        rowsDone.addAndGet(count);
+    }
+
+    /**
+     * @return How much of the current filter is done, from 0 to 100.
+     */
+    public int getPercent()
+    {
+        long total = rows;
+        if(total <= 0) {
+            return 0;
+        }
+        return (int) Math.min(100, rowsDone.get() * 100 / total);
+    }
+}
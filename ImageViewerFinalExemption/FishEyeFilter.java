@@ -1,71 +1,80 @@
 /**
  * An image filter to create an effect similar to a fisheye camera lens.
  * (Works especially well on portraits.)
- * 
+ *
+ * The displacement of every pixel comes from a WarpMap, which is cached
+ * per image size and strength. Pixels can either be copied from the
+ * nearest source position (the classic look) or interpolated
+ * bilinearly for smoother lines.
+ *
  * @author Michael Kölling and David J. Barnes.
- * @version 1.0
+ * @version 2.0
  */
 public class FishEyeFilter extends Filter
 {
-    // constants:
-    private final static int SCALE = 20;   // this defines the strenght of the filter
-    private final static double TWO_PI = 2 * Math.PI;
+    // the strength used by the simple constructor (in pixels)
+    public static final double DEFAULT_STRENGTH = 20;
+
+    private final double strength;
+    private final boolean bilinear;
 
     /**
-     * Constructor for objects of class LensFilter.
+     * Constructor for objects of class FishEyeFilter, with the default
+     * strength and nearest-pixel sampling.
      * @param name The name of the filter.
      */
     public FishEyeFilter(String name)
     {
-        super(name);
+        this(name, DEFAULT_STRENGTH, false);
     }
 
     /**
-     * Apply this filter to an image.
-     * 
-     * @param  image  The image to be changed by this filter.
+     * Constructor for objects of class FishEyeFilter.
+     * @param name The name of the filter.
+     * @param strength The largest distance (in pixels) a pixel is moved.
+     * @param bilinear true to interpolate between source pixels, false to
+     *                 copy the nearest one.
      */
-    public void apply(OFImage image)
+    public FishEyeFilter(String name, double strength, boolean bilinear)
     {
-        int height = image.getHeight();
-        int width = image.getWidth();
-        OFImage original = new OFImage(image);
-
-        int[] xa = computeXArray(width);
-        int[] ya = computeYArray(height);
-        
-        for(int y = 0; y < height; y++) {
-            for(int x = 0; x < width; x++) {
-                image.setPixel(x, y, original.getPixel(x + xa[x], y + ya[y]));
-            }
-        }
+        super(name);
+        this.strength = strength;
+        this.bilinear = bilinear;
     }
 
     /**
-     * Compute and return an array of horizontal offsets for each pixel column.
-     * These can then be applied as the horizontal offset for each pixel.
+     * The fish eye effect moves pixels by up to the strength of the
+     * filter (one row more when interpolating).
+     *
+     * @param  width   The width of the image.
+     * @param  height  The height of the image.
+     * @return The number of extra rows needed on either side of a band.
      */
-    private int[] computeXArray(int width)
+    public int getHalo(int width, int height)
     {
-        int[] xArray = new int[width];
-        
-        for(int i=0; i < width; i++) {
-            xArray[i] = (int)(Math.sin( ((double)i / width) * TWO_PI) * SCALE);
-        }
-        return xArray;
+        return WarpMap.fishEye(width, height, strength).getMaxRowShift();
     }
 
     /**
-     * Compute and return an array of vertical offsets for each pixel row.
-     * These can then be applied as the vertical offset for each pixel.
+     * Filter a band of rows of an image.
+     *
+     * @param  source   The packed pixels to read from.
+     * @param  sourceY  The image row of the first row in source.
+     * @param  target   The packed pixels of the image, to be changed.
+     * @param  width    The width of the image.
+     * @param  height   The height of the image.
+     * @param  fromY    The first row to change.
+     * @param  toY      The row after the last row to change.
      */
-    private int[] computeYArray(int height)
+    protected void filterRows(int[] source, int sourceY, int[] target,
+                              int width, int height, int fromY, int toY)
     {
-        int[] yArray = new int[height];
-        
-        for(int i=0; i < height; i++) {
-            yArray[i] = (int)(Math.sin( ((double)i / height) * TWO_PI) * SCALE);
+        WarpMap map = WarpMap.fishEye(width, height, strength);
+        if(bilinear) {
+            map.sampleBilinear(source, sourceY, target, fromY, toY);
+        }
+        else {
+            map.sampleNearest(source, sourceY, target, fromY, toY);
         }
-        return yArray;
     }
 }
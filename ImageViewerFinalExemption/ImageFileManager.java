@@ -1,8 +1,14 @@
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.stream.ImageInputStream;
 
 /**
  * ImageFileManager is a small utility class with static methods to load
@@ -11,14 +17,28 @@ import javax.imageio.ImageIO;
  * The files on disk can be in JPG or PNG image format. For files written
  * by this class, the format is determined by the constant IMAGE_FORMAT.
  * 
+ * Images too large to be loaded into memory (see fitsInMemory) can be
+ * shown tile by tile with a TiledImageSource instead.
+ * 
+ * When an image is only needed at a smaller size (for a preview, a
+ * thumbnail or a slide that has to fit the screen), it can be loaded at
+ * that size: then only every n-th pixel of every n-th row is decoded,
+ * which takes about 1/n^2 of the time and memory, or the small preview
+ * image stored in the file is used if it is large enough.
+ * 
+ * To load images in the background, see ImageLoader.
+ * 
  * @author Michael Kölling and David J. Barnes.
- * @version 2.0
+ * @version 2.3
  */
 public class ImageFileManager
 {
     // A constant for the image format that this writer uses for writing.
     // Available formats are "jpg" and "png".
     private static final String IMAGE_FORMAT = "jpg";
+    // The part of the maximum heap size that one loaded image may use, as
+    // a divisor: the undo history and filters need room for more copies
+    private static final int MEMORY_SHARE = 4;
     
     /**
      * Read an image file from disk and return it as an image. This method
@@ -44,6 +64,177 @@ public class ImageFileManager
         }
     }
 
+    /**
+     * Read an image file from disk at a reduced size, decoding only as
+     * many pixels as needed to fill a given size. The image keeps its
+     * aspect ratio and is at least as large as it would be if it were
+     * scaled to fit into maxWidth x maxHeight, but may be up to twice as
+     * large (it is never larger than the image in the file). In case of
+     * any problem this method returns null.
+     * 
+     * @param imageFile  The image file to be loaded.
+     * @param maxWidth   The width the image is needed at (at least 1).
+     * @param maxHeight  The height the image is needed at (at least 1).
+     * @return           The image object or null if it could not be read.
+     */
+    public static OFImage loadImage(File imageFile, int maxWidth, int maxHeight)
+    {
+        return loadImage(imageFile, maxWidth, maxHeight, null, null);
+    }
+
+    /**
+     * Read an image file from disk at a reduced size (see above), and
+     * report on the decoding while it goes on. The progress listener is
+     * told how far the decoding is, and may abort it (see
+     * ImageReader.abort); the update listener is told which pixels have
+     * been decoded, so that they can be shown before the rest. In case of
+     * any problem this method returns null; when the decoding is aborted,
+     * it returns the partly decoded image.
+     * 
+     * @param imageFile  The image file to be loaded.
+     * @param maxWidth   The width the image is needed at (at least 1).
+     * @param maxHeight  The height the image is needed at (at least 1).
+     * @param progress   The progress listener, or null.
+     * @param updates    The update listener, or null.
+     * @return           The image object or null if it could not be read.
+     */
+    public static OFImage loadImage(File imageFile, int maxWidth, int maxHeight,
+                                    IIOReadProgressListener progress,
+                                    IIOReadUpdateListener updates)
+    {
+        try(ImageInputStream input = ImageIO.createImageInputStream(imageFile)) {
+            ImageReader reader = openReader(input);
+            if(reader == null) {
+                return null;
+            }
+            try {
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                // the scale at which the image fits, and every how many
+                // pixels one is enough to reach it
+                double scale = Math.min((double) maxWidth / width, (double) maxHeight / height);
+                int step = Math.max(1, Math.max(width / maxWidth, height / maxHeight));
+                BufferedImage image = readThumbnail(reader, width * scale, height * scale);
+                if(image == null) {
+                    if(progress != null) {
+                        reader.addIIOReadProgressListener(progress);
+                    }
+                    if(updates != null) {
+                        reader.addIIOReadUpdateListener(updates);
+                    }
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(step, step, 0, 0);
+                    image = reader.read(0, param);
+                }
+                return new OFImage(image);
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+        catch(IOException | RuntimeException exc) {
+            return null;
+        }
+    }
+
+    /**
+     * Read an image file from disk as a thumbnail: scaled down (if
+     * needed) to fit exactly into a square of a given size, keeping its
+     * aspect ratio. In case of any problem this method returns null.
+     * 
+     * @param imageFile  The image file to be loaded.
+     * @param size       The width and height of the square (at least 1).
+     * @return           The thumbnail or null if it could not be read.
+     */
+    public static OFImage loadThumbnail(File imageFile, int size)
+    {
+        OFImage image = loadImage(imageFile, size, size);
+        if(image == null || (image.getWidth() <= size && image.getHeight() <= size)) {
+            return image;
+        }
+        double scale = Math.min((double) size / image.getWidth(), (double) size / image.getHeight());
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        return new Resampler(Resampler.Method.BILINEAR).resize(image, width, height);
+    }
+
+    /**
+     * Find out whether an image file is small enough to be loaded into
+     * memory as a whole. Only the header of the file is read.
+     * 
+     * @param imageFile  The image file.
+     * @return           false if the image is too large for the heap; true
+     *                   otherwise (also if its size cannot be read).
+     */
+    public static boolean fitsInMemory(File imageFile)
+    {
+        try(ImageInputStream input = ImageIO.createImageInputStream(imageFile)) {
+            ImageReader reader = openReader(input);
+            if(reader == null) {
+                return true;
+            }
+            try {
+                long bytes = 4L * reader.getWidth(0) * reader.getHeight(0);
+                return bytes <= Runtime.getRuntime().maxMemory() / MEMORY_SHARE;
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+        catch(IOException exc) {
+            return true;
+        }
+    }
+
+    /**
+     * Find a reader for an image file, and set it to read from the file.
+     * 
+     * @param input  The stream of the file, or null.
+     * @return       The reader, or null if the format is not known.
+     */
+    private static ImageReader openReader(ImageInputStream input)
+    {
+        if(input == null) {
+            return null;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if(!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, false, true);
+        return reader;
+    }
+
+    /**
+     * Read the smallest preview image stored in an image file (such as the
+     * thumbnail of a JPEG file) that is at least a given size.
+     * 
+     * @param reader  The reader of the file.
+     * @param width   The width needed.
+     * @param height  The height needed.
+     * @return        The preview, or null if the file has none large enough.
+     */
+    private static BufferedImage readThumbnail(ImageReader reader, double width, double height)
+            throws IOException
+    {
+        if(!reader.readerSupportsThumbnails()) {
+            return null;
+        }
+        int best = -1;
+        long bestSize = Long.MAX_VALUE;
+        for(int i = 0; i < reader.getNumThumbnails(0); i++) {
+            int thumbnailWidth = reader.getThumbnailWidth(0, i);
+            int thumbnailHeight = reader.getThumbnailHeight(0, i);
+            long size = (long) thumbnailWidth * thumbnailHeight;
+            if(thumbnailWidth >= width && thumbnailHeight >= height && size < bestSize) {
+                best = i;
+                bestSize = size;
+            }
+        }
+        return best < 0 ? null : reader.readThumbnail(0, best);
+    }
+
     /**
      * Write an image file to disk. The file format is JPG. In case of any 
      * problem the method just silently returns.
@@ -0,0 +1,839 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An ImageHistory stores the states of an image while it is being edited,
+ * so that edits can be undone and redone.
+ *
+ * States are not stored as complete images. Every state of the same
+ * size as the one before it is stored as a delta to that state; only
+ * every few states (and whenever the image changes size) a keyframe with
+ * all pixels is kept as well. The image is divided into square tiles,
+ * and a delta holds only the tiles that changed, each as the compressed
+ * exclusive-or of the old and new pixels. The exclusive-or is stored one byte plane at a time (all alpha
+ * bytes, then all red bytes, and so on), because bits that did not
+ * change are zero and the planes of channels that did not change then
+ * compress to almost nothing. Only Huffman coding is used, which is
+ * several times faster than full compression and nearly as good on this
+ * kind of data.
+ *
+ * A state can also be stored as the operation that created it from the
+ * state before it (see ImageOperation), to be applied again when the
+ * state is needed. This is done when the operation was cheap compared to
+ * storing a delta for an image of its size (the time taken by both is
+ * measured), and as long as rebuilding a state from the nearest keyframe
+ * would not replay more than half a second of operations.
+ *
+ * Keyframes and the current state are kept as snapshots (see
+ * TiledRaster) that share every tile that did not change between them,
+ * so a keyframe costs memory only for the tiles edited since the one
+ * before it, and storing a state of an image that was only partly edited
+ * touches only the edited tiles. The tiles of a delta are those that the
+ * new snapshot does not share with the one before it.
+ *
+ * Every state also records the orientation in which its pixels are to
+ * be shown (see Orientation), so that turning or mirroring an image
+ * without moving its pixels can be undone like any other edit; such a
+ * state costs almost nothing, since all its tiles are shared.
+ *
+ * The history keeps a snapshot of its current state, so stepping to a
+ * neighboring state only needs to apply one delta (exclusive-or works in
+ * both directions) or replay one operation (forwards only). Other states
+ * are rebuilt from the nearest keyframe.
+ *
+ * The states kept in memory stay within a memory budget. When it is
+ * exceeded, the oldest states are moved to disk: each is written as a
+ * raw raster to a memory-mapped file in a scratch directory (see
+ * MappedRaster), from which it can be read back without decoding. The
+ * states on disk stay within a disk budget of their own; beyond that the
+ * oldest states are dropped. The files are deleted when the history is
+ * cleared, and at the latest when the program ends.
+ *
+ * The budgets can be set with the system properties
+ * "imageviewer.history.budget" and "imageviewer.history.disk" (both in
+ * megabytes); by default they are a quarter of the maximum heap size and
+ * 4 gigabytes. The scratch directory is created in the directory given by
+ * "imageviewer.history.scratch", or in the system's temporary directory.
+ * A disk budget of 0 switches moving states to disk off.
+ *
+ * Rebuilding a state can take a while (replaying operations, inflating
+ * deltas, reading states back from disk), so undo, redo and goTo may be
+ * called on a background thread. All public methods are synchronized: a
+ * call made while a state is being rebuilt waits until it is done.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.8
+ */
+public class ImageHistory
+{
+    private static final long MEGABYTE = 1024 * 1024;
+
+    // the default memory budget, in bytes
+    public static final long DEFAULT_BUDGET = MEGABYTE *
+        Long.getLong("imageviewer.history.budget", Runtime.getRuntime().maxMemory() / 4 / MEGABYTE);
+    // the default disk budget, in bytes
+    public static final long DEFAULT_DISK_BUDGET = MEGABYTE *
+        Long.getLong("imageviewer.history.disk", 4096);
+
+    // the largest number of states without a keyframe in a row
+    private static final int KEYFRAME_INTERVAL = 8;
+    // an operation is replayed rather than stored if it took at most this
+    // many times as long as storing a delta (which is paid for again when
+    // the delta is applied)
+    private static final double REPLAY_COST_FACTOR = 2;
+    // the most time (in nanoseconds) that rebuilding a state may spend on
+    // replaying operations
+    private static final long MAX_REPLAY_TIME = 500_000_000;
+
+    private final long budget;
+    private final long diskBudget;
+    private final List<State> states;
+    // the index of the current state, or -1 if the history is empty
+    private int current;
+    // the memory used by the states in memory, in bytes, and the number
+    // of keyframes in memory that hold each tile (a tile shared by
+    // several keyframes is counted once)
+    private long memoryUsed;
+    private final Map<int[], Integer> tileUsers;
+    // the number of oldest states that are on disk, and their size
+    private int spilled;
+    private long diskUsed;
+    // the scratch directory, or null until the first state is moved to disk
+    private Path scratchDirectory;
+
+    // the pixels of the current state, or null if the history is empty
+    private TiledRaster snapshot;
+
+    // the measured time needed to store a delta, per pixel, in nanoseconds
+    private double deltaTimePerPixel;
+
+    private final Deflater deflater;
+    private final Inflater inflater;
+    // the uncompressed bytes of one tile, and room for compressing it
+    private final byte[] tileBytes;
+    private byte[] compressed;
+
+    /**
+     * Create an empty history with the default budgets.
+     */
+    public ImageHistory()
+    {
+        this(DEFAULT_BUDGET, DEFAULT_DISK_BUDGET);
+    }
+
+    /**
+     * Create an empty history.
+     * @param budget The largest amount of memory (in bytes) the states in
+     *               memory should use. The current state is always kept,
+     *               even if it alone is larger.
+     * @param diskBudget The largest amount of disk space (in bytes) the
+     *               states on disk may use; 0 to never move states to disk.
+     */
+    public ImageHistory(long budget, long diskBudget)
+    {
+        this.budget = budget;
+        this.diskBudget = diskBudget;
+        states = new ArrayList<>();
+        current = -1;
+        tileUsers = new IdentityHashMap<>();
+        deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setStrategy(Deflater.HUFFMAN_ONLY);
+        inflater = new Inflater();
+        deltaTimePerPixel = 10;
+        tileBytes = new byte[TiledRaster.TILE_SIZE * TiledRaster.TILE_SIZE * 4];
+        compressed = new byte[tileBytes.length];
+    }
+
+    /**
+     * Remove all states, and start a new history with the given image as
+     * its only state.
+     *
+     * @param  image  The first state of the history.
+     */
+    public synchronized void reset(OFImage image)
+    {
+        reset(image, Orientation.NORMAL);
+    }
+
+    /**
+     * Remove all states, and start a new history with the given image,
+     * shown in a given orientation, as its only state.
+     */
+    private void reset(OFImage image, Orientation orientation)
+    {
+        clear();
+        snapshot = TiledRaster.of(image);
+        State first = new State(snapshot, orientation, snapshot, null, null, 0);
+        states.add(first);
+        current = 0;
+        remember(first);
+    }
+
+    /**
+     * Remove all states, and delete the files of the states on disk.
+     */
+    public synchronized void clear()
+    {
+        for(State state : states) {
+            state.deleteRaster();
+        }
+        states.clear();
+        current = -1;
+        memoryUsed = 0;
+        tileUsers.clear();
+        spilled = 0;
+        diskUsed = 0;
+        snapshot = null;
+        if(scratchDirectory != null) {
+            try {
+                Files.deleteIfExists(scratchDirectory);
+            }
+            catch(IOException e) {
+                // files the system could not delete yet (and the directory)
+                // are deleted on exit
+            }
+            scratchDirectory = null;
+        }
+    }
+
+    /**
+     * Add a new state after the current one, and make it the current
+     * state. States that could have been redone are removed. If the
+     * history is empty, the image becomes its first state.
+     *
+     * @param  image  The new state (the image is copied, not kept; only
+     *                the tiles that changed are copied if the image
+     *                came from this history and was edited with
+     *                setPixel, setRow or markChanged since).
+     */
+    public synchronized void add(OFImage image)
+    {
+        add(image, Orientation.NORMAL, null, 0);
+    }
+
+    /**
+     * Add a new state after the current one that was created by an
+     * operation, and make it the current state. The history may keep the
+     * operation instead of the pixels, and apply it again when the state
+     * is needed. States that could have been redone are removed. If the
+     * history is empty, the image becomes its first state.
+     *
+     * @param  image      The new state (the image is copied, not kept).
+     * @param  operation  The operation that turned the current state into
+     *                    the new one, or null if it is not known.
+     * @param  time       The time the operation took, in nanoseconds.
+     */
+    public synchronized void add(OFImage image, ImageOperation operation, long time)
+    {
+        add(image, Orientation.NORMAL, operation, time);
+    }
+
+    /**
+     * Add a new state after the current one, shown in a given orientation,
+     * and make it the current state. The history may keep the operation
+     * that created its pixels instead of the pixels, and apply it again
+     * when the state is needed. States that could have been redone are
+     * removed. If the history is empty, the image becomes its first state.
+     *
+     * @param  image        The pixels of the new state (the image is
+     *                      copied, not kept).
+     * @param  orientation  The orientation in which the pixels are shown.
+     * @param  operation    The operation that turned the pixels of the
+     *                      current state into the new ones, or null if it
+     *                      is not known.
+     * @param  time         The time the operation took, in nanoseconds.
+     */
+    public synchronized void add(OFImage image, Orientation orientation,
+                                 ImageOperation operation, long time)
+    {
+        if(current < 0) {
+            reset(image, orientation);
+            return;
+        }
+        while(states.size() > current + 1) {
+            State removed = states.remove(states.size() - 1);
+            forget(removed);
+            diskUsed -= removed.getDiskUsed();
+            removed.deleteRaster();
+        }
+        spilled = Math.min(spilled, states.size());
+
+        boolean sameSize = image.getWidth() == snapshot.getWidth()
+                           && image.getHeight() == snapshot.getHeight()
+                           && image.getColorModel().hasAlpha() == snapshot.hasAlpha();
+        long storeTime = (long) (deltaTimePerPixel * image.getWidth() * image.getHeight());
+        boolean replay = operation != null && time <= REPLAY_COST_FACTOR * storeTime
+                         && replayTime(current) + time <= MAX_REPLAY_TIME;
+        boolean checkpoint = current - lastKeyframe(current) + 1 >= KEYFRAME_INTERVAL;
+
+        // the oldest state in memory (when the current state is on disk)
+        // needs a keyframe, and so does a new size unless it is replayed
+        State state;
+        if(current < spilled || (!sameSize && !replay)) {
+            snapshot = snapshot.update(image);
+            state = new State(snapshot, orientation, snapshot, null, null, 0);
+        }
+        else if(replay) {
+            snapshot = snapshot.update(image);
+            state = new State(snapshot, orientation, checkpoint ? snapshot : null, null,
+                              operation, time);
+        }
+        else {
+            long start = System.nanoTime();
+            TiledRaster previous = snapshot;
+            snapshot = snapshot.update(image);
+            byte[][] tiles = createDelta(previous, snapshot);
+            long pixelCount = (long) snapshot.getWidth() * snapshot.getHeight();
+            deltaTimePerPixel = (deltaTimePerPixel + (double) (System.nanoTime() - start) / pixelCount) / 2;
+            state = new State(snapshot, orientation, checkpoint ? snapshot : null, tiles,
+                              null, 0);
+        }
+        states.add(state);
+        current++;
+        remember(state);
+        evict();
+    }
+
+    /**
+     * @return true if there is a state before the current one.
+     */
+    public synchronized boolean canUndo()
+    {
+        return current > 0;
+    }
+
+    /**
+     * @return true if there is a state after the current one.
+     */
+    public synchronized boolean canRedo()
+    {
+        return current >= 0 && current < states.size() - 1;
+    }
+
+    /**
+     * Step back to the state before the current one.
+     *
+     * @return A new image with the pixels of that state.
+     */
+    public synchronized OFImage undo()
+    {
+        if(!canUndo()) {
+            throw new IllegalStateException("nothing to undo");
+        }
+        return goTo(current - 1);
+    }
+
+    /**
+     * Step forward to the state after the current one.
+     *
+     * @return A new image with the pixels of that state.
+     */
+    public synchronized OFImage redo()
+    {
+        if(!canRedo()) {
+            throw new IllegalStateException("nothing to redo");
+        }
+        return goTo(current + 1);
+    }
+
+    /**
+     * Make any stored state the current state.
+     *
+     * @param  index  The index of the state (0 is the oldest state).
+     * @return A new image with the pixels of that state.
+     */
+    public synchronized OFImage goTo(int index)
+    {
+        if(index < 0 || index >= states.size()) {
+            throw new IndexOutOfBoundsException("no state " + index);
+        }
+        // step from the current state if that is possible and shorter
+        // than starting over at the nearest keyframe; forwards, every state
+        // can be reached from the one before it, backwards only over deltas
+        int keyframe = lastKeyframe(index);
+        if(index > current && current >= keyframe) {
+            for(int i = current + 1; i <= index; i++) {
+                stepTo(states.get(i));
+            }
+        }
+        else if(index < current && current - index <= index - keyframe
+                && firstWithoutDelta(current) <= index) {
+            for(int i = current; i > index; i--) {
+                snapshot = xorTiles(states.get(i).tiles, snapshot);
+            }
+        }
+        else if(index != current) {
+            loadKeyframe(states.get(keyframe));
+            for(int i = keyframe + 1; i <= index; i++) {
+                stepTo(states.get(i));
+            }
+        }
+        current = index;
+        return getImage();
+    }
+
+    /**
+     * @return A new image with the pixels of the current state, or null
+     *         if the history is empty.
+     */
+    public synchronized OFImage getImage()
+    {
+        if(current < 0) {
+            return null;
+        }
+        return snapshot.toImage();
+    }
+
+    /**
+     * @return The orientation in which the current state is shown, or
+     *         null if the history is empty.
+     */
+    public synchronized Orientation getOrientation()
+    {
+        if(current < 0) {
+            return null;
+        }
+        return states.get(current).orientation;
+    }
+
+    /**
+     * @return The number of stored states.
+     */
+    public synchronized int size()
+    {
+        return states.size();
+    }
+
+    /**
+     * @return The index of the current state, or -1 if the history is empty.
+     */
+    public synchronized int getIndex()
+    {
+        return current;
+    }
+
+    /**
+     * @return The memory used by the states in memory, in bytes.
+     */
+    public synchronized long getMemoryUsed()
+    {
+        return memoryUsed;
+    }
+
+    /**
+     * @return The memory budget of this history, in bytes.
+     */
+    public long getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * @return The disk space used by the states on disk, in bytes.
+     */
+    public synchronized long getDiskUsed()
+    {
+        return diskUsed;
+    }
+
+    /**
+     * @return The number of (oldest) states that are on disk.
+     */
+    public synchronized int getSpilledCount()
+    {
+        return spilled;
+    }
+
+    // ---- support methods ----
+
+    /**
+     * Return the index of the nearest state at or before a given index
+     * that has a keyframe.
+     */
+    private int lastKeyframe(int index)
+    {
+        while(!states.get(index).hasKeyframe()) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Return the time needed to replay the operations from the nearest
+     * keyframe up to a given state, in nanoseconds.
+     */
+    private long replayTime(int index)
+    {
+        long total = 0;
+        for(int i = lastKeyframe(index) + 1; i <= index; i++) {
+            total += states.get(i).time;
+        }
+        return total;
+    }
+
+    /**
+     * Return the index of the nearest state at or before a given index
+     * that has no delta to the state before it.
+     */
+    private int firstWithoutDelta(int index)
+    {
+        while(states.get(index).tiles != null) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Count the memory used by a state that is added to the history (or
+     * has just been changed). The tiles of its keyframe are only counted
+     * if no other keyframe in memory holds them.
+     */
+    private void remember(State state)
+    {
+        memoryUsed += state.getMemoryUsed();
+        if(state.keyframe != null) {
+            for(int t = 0; t < state.keyframe.getTileCount(); t++) {
+                int[] tile = state.keyframe.getTile(t);
+                if(tileUsers.merge(tile, 1, Integer::sum) == 1) {
+                    memoryUsed += 4L * tile.length + 16;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop counting the memory used by a state that is removed from the
+     * history (or is about to be changed). The tiles of its keyframe are
+     * only subtracted if no other keyframe in memory holds them.
+     */
+    private void forget(State state)
+    {
+        memoryUsed -= state.getMemoryUsed();
+        if(state.keyframe != null) {
+            for(int t = 0; t < state.keyframe.getTileCount(); t++) {
+                int[] tile = state.keyframe.getTile(t);
+                int users = tileUsers.get(tile) - 1;
+                if(users == 0) {
+                    tileUsers.remove(tile);
+                    memoryUsed -= 4L * tile.length + 16;
+                }
+                else {
+                    tileUsers.put(tile, users);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the oldest states in memory to disk until the states in memory
+     * fit into the memory budget, and drop the oldest states on disk until
+     * those fit into the disk budget. The new oldest state in memory gets
+     * a keyframe (if it has none yet) and loses its delta, which is no
+     * longer needed.
+     */
+    private void evict()
+    {
+        while(memoryUsed > budget && spilled < current) {
+            State first = states.get(spilled);
+            State next = states.get(spilled + 1);
+            TiledRaster keyframe = first.keyframe;
+            if(spill(first)) {
+                spilled++;
+            }
+            else {
+                // no room on disk: drop this state and all older ones
+                for(int i = 0; i <= spilled; i++) {
+                    State removed = states.remove(0);
+                    forget(removed);
+                    diskUsed -= removed.getDiskUsed();
+                    removed.deleteRaster();
+                }
+                current -= spilled + 1;
+                spilled = 0;
+            }
+            forget(next);
+            if(!next.hasKeyframe()) {
+                // rebuild the next state from the old keyframe
+                next.keyframe = rebuild(next, keyframe);
+            }
+            next.tiles = null;
+            next.operation = null;
+            next.time = 0;
+            remember(next);
+        }
+        while(diskUsed > diskBudget && spilled > 0) {
+            State removed = states.remove(0);
+            forget(removed);
+            diskUsed -= removed.getDiskUsed();
+            removed.deleteRaster();
+            spilled--;
+            current--;
+        }
+    }
+
+    /**
+     * Move the keyframe of a state to a file on disk.
+     *
+     * @return true if the state was moved, false if there is no room for
+     *         it on disk or the file could not be written.
+     */
+    private boolean spill(State state)
+    {
+        if(4L * state.width * state.height > diskBudget) {
+            return false;
+        }
+        try {
+            if(scratchDirectory == null) {
+                String parent = System.getProperty("imageviewer.history.scratch",
+                                                   System.getProperty("java.io.tmpdir"));
+                scratchDirectory = Files.createTempDirectory(Paths.get(parent), "imageviewer-history");
+                // deleted on exit after the files in it, which are
+                // registered later
+                scratchDirectory.toFile().deleteOnExit();
+            }
+            state.raster = new MappedRaster(scratchDirectory, state.keyframe.toPixels());
+        }
+        catch(IOException | RuntimeException | InternalError e) {
+            // the raster has deleted its partial file; evicting takes over
+            // (mapping more than 2 GB fails with an IllegalArgumentException,
+            // and a full disk can fail while the mapped memory is written)
+            return false;
+        }
+        forget(state);
+        state.keyframe = null;
+        state.operation = null;
+        state.time = 0;
+        remember(state);
+        diskUsed += state.getDiskUsed();
+        return true;
+    }
+
+    /**
+     * Create a delta between two snapshots of the same size: the tiles
+     * the new snapshot does not share with the old one.
+     */
+    private byte[][] createDelta(TiledRaster previous, TiledRaster next)
+    {
+        byte[][] tiles = new byte[next.getTileCount()][];
+        for(int t = 0; t < tiles.length; t++) {
+            int[] oldTile = previous.getTile(t);
+            int[] newTile = next.getTile(t);
+            if(oldTile == newTile) {
+                continue;
+            }
+            int count = newTile.length;
+            for(int k = 0; k < count; k++) {
+                int diff = oldTile[k] ^ newTile[k];
+                tileBytes[k] = (byte) (diff >>> 24);
+                tileBytes[k + count] = (byte) (diff >>> 16);
+                tileBytes[k + 2 * count] = (byte) (diff >>> 8);
+                tileBytes[k + 3 * count] = (byte) diff;
+            }
+            tiles[t] = compress(4 * count);
+        }
+        return tiles;
+    }
+
+    /**
+     * Make a state's keyframe the current snapshot.
+     */
+    private void loadKeyframe(State state)
+    {
+        snapshot = state.getKeyframe();
+    }
+
+    /**
+     * Change the current snapshot from the state before a given state to
+     * that state.
+     */
+    private void stepTo(State state)
+    {
+        if(state.tiles == null && state.operation == null) {
+            loadKeyframe(state);
+        }
+        else {
+            snapshot = rebuild(state, snapshot);
+        }
+    }
+
+    /**
+     * Rebuild the pixels of a state from the pixels of the state before
+     * it, by applying its delta or replaying its operation.
+     *
+     * @param  state     The state to rebuild.
+     * @param  previous  The snapshot of the state before it.
+     * @return A snapshot of the state, sharing the tiles that did not
+     *         change with the previous one.
+     */
+    private TiledRaster rebuild(State state, TiledRaster previous)
+    {
+        if(state.tiles != null) {
+            return xorTiles(state.tiles, previous);
+        }
+        return previous.update(state.operation.apply(previous.toImage()));
+    }
+
+    /**
+     * Combine the tiles of a delta with a snapshot by exclusive-or.
+     *
+     * @return A new snapshot with the changed tiles.
+     */
+    private TiledRaster xorTiles(byte[][] tiles, TiledRaster target)
+    {
+        int[][] changed = new int[tiles.length][];
+        for(int t = 0; t < tiles.length; t++) {
+            if(tiles[t] == null) {
+                continue;
+            }
+            int[] tile = target.getTile(t).clone();
+            int count = tile.length;
+            decompress(tiles[t], 4 * count);
+            for(int k = 0; k < count; k++) {
+                tile[k] ^= (tileBytes[k] & 0xff) << 24 | (tileBytes[k + count] & 0xff) << 16
+                           | (tileBytes[k + 2 * count] & 0xff) << 8
+                           | (tileBytes[k + 3 * count] & 0xff);
+            }
+            changed[t] = tile;
+        }
+        return target.withTiles(changed);
+    }
+
+    /**
+     * Compress the first length bytes of the tile buffer.
+     */
+    private byte[] compress(int length)
+    {
+        deflater.reset();
+        deflater.setInput(tileBytes, 0, length);
+        deflater.finish();
+        int size = 0;
+        while(!deflater.finished()) {
+            if(size == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+        return Arrays.copyOf(compressed, size);
+    }
+
+    /**
+     * Decompress a tile into the tile buffer.
+     */
+    private void decompress(byte[] data, int length)
+    {
+        inflater.reset();
+        inflater.setInput(data);
+        try {
+            int size = 0;
+            while(size < length && !inflater.finished()) {
+                size += inflater.inflate(tileBytes, size, length - size);
+            }
+        }
+        catch(DataFormatException e) {
+            throw new IllegalStateException("damaged history tile", e);
+        }
+    }
+
+    // ---- stored states ----
+
+    /**
+     * A stored state of the image: a keyframe with all its pixels (in
+     * memory or on disk), a delta to the state before it (the changed
+     * tiles, null for tiles that did not change) or the operation that
+     * created it from the state before it, or a keyframe together with
+     * one of the others; and the orientation the pixels are shown in.
+     */
+    private static class State
+    {
+        private final int width;
+        private final int height;
+        private final boolean alpha;
+        private final Orientation orientation;
+        private TiledRaster keyframe;
+        private MappedRaster raster;
+        private byte[][] tiles;
+        private ImageOperation operation;
+        // the time the operation took, in nanoseconds
+        private long time;
+
+        public State(TiledRaster pixels, Orientation orientation, TiledRaster keyframe,
+                     byte[][] tiles, ImageOperation operation, long time)
+        {
+            this.width = pixels.getWidth();
+            this.height = pixels.getHeight();
+            this.alpha = pixels.hasAlpha();
+            this.orientation = orientation;
+            this.keyframe = keyframe;
+            this.tiles = tiles;
+            this.operation = operation;
+            this.time = time;
+        }
+
+        /**
+         * @return true if all pixels of this state are stored.
+         */
+        public boolean hasKeyframe()
+        {
+            return keyframe != null || raster != null;
+        }
+
+        /**
+         * @return The pixels of this state's keyframe, read back from disk
+         *         if necessary.
+         */
+        public TiledRaster getKeyframe()
+        {
+            return keyframe != null ? keyframe : TiledRaster.of(raster.read(), width, height, alpha);
+        }
+
+        /**
+         * @return The disk space used by this state, in bytes.
+         */
+        public long getDiskUsed()
+        {
+            return raster != null ? raster.getSize() : 0;
+        }
+
+        /**
+         * Delete the file of this state, if it is on disk.
+         */
+        public void deleteRaster()
+        {
+            if(raster != null) {
+                raster.delete();
+            }
+        }
+
+        /**
+         * @return The memory used by this state, in bytes, apart from its
+         *         keyframe (whose tiles may be shared with other states).
+         */
+        public long getMemoryUsed()
+        {
+            long size = 0;
+            if(operation != null) {
+                // a rough guess; operations hold few fields
+                size += 64;
+            }
+            if(tiles != null) {
+                size += 8L * tiles.length;
+                for(byte[] tile : tiles) {
+                    if(tile != null) {
+                        size += tile.length + 16;
+                    }
+                }
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.swing.SwingUtilities;
+
+/**
+ * An ImageLoader loads image files in the background, on a small pool of
+ * worker threads, so that the user interface stays responsive while
+ * large files are decoded.
+ *
+ * While a file is decoded, the loader keeps a small preview of the
+ * pixels decoded so far (every n-th pixel of every n-th row), and passes
+ * a copy of it on every PREVIEW_INTERVAL milliseconds, together with how
+ * far the decoding is. So the image appears while it is loaded: row by
+ * row, or, for progressive JPEG and interlaced PNG files, blurred at
+ * first and then sharper. If the thumbnail cache (see ThumbnailCache) has
+ * a thumbnail of the file, that is shown at once instead; every image
+ * loaded is added to the cache.
+ *
+ * All calls to a Listener are made on the Swing event thread. A load can
+ * be cancelled; the decoding then stops as soon as the reader next
+ * reports progress, and the listener is not called again.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.3
+ */
+public class ImageLoader
+{
+    // The longest side of a preview, in pixels
+    public static final int PREVIEW_SIZE = 1024;
+    // The least time between two previews, in milliseconds
+    public static final int PREVIEW_INTERVAL = 250;
+
+    private static ImageLoader defaultLoader = new ImageLoader(2);
+
+    private final ExecutorService pool;
+
+    /**
+     * What a load tells about its progress. All methods are called on the
+     * Swing event thread, and not after the load has been cancelled.
+     */
+    public interface Listener
+    {
+        /**
+         * Part of the image has been decoded.
+         * @param preview  A copy of the image so far, made smaller.
+         * @param scale    The factor by which the preview is smaller.
+         * @param percent  How much of the image has been decoded.
+         */
+        void previewLoaded(OFImage preview, double scale, int percent);
+
+        /**
+         * The image has been loaded.
+         * @param image  The image.
+         */
+        void imageLoaded(OFImage image);
+
+        /**
+         * The file could not be read (it does not exist, or is not in a
+         * known image format).
+         */
+        void loadFailed();
+    }
+
+    /**
+     * A load that has been started, and can be cancelled.
+     */
+    public static class Task
+    {
+        private volatile boolean cancelled;
+
+        /**
+         * Cancel this load. If called on the event thread, the listener is
+         * not called again.
+         */
+        public void cancel()
+        {
+            cancelled = true;
+        }
+
+        /**
+         * @return true if this load has been cancelled.
+         */
+        public boolean isCancelled()
+        {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Create a loader that decodes on a given number of threads.
+     * @param threads The number of worker threads (at least 1).
+     */
+    public ImageLoader(int threads)
+    {
+        ThreadFactory factory = work -> {
+            Thread thread = new Thread(work, "Image loader");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+        pool = Executors.newFixedThreadPool(threads, factory);
+    }
+
+    /**
+     * @return The loader shared by the application.
+     */
+    public static ImageLoader getDefault()
+    {
+        return defaultLoader;
+    }
+
+    /**
+     * Start loading an image file at full size.
+     *
+     * @param file      The image file.
+     * @param listener  The listener to tell about the progress.
+     * @return The task, to cancel the load with.
+     */
+    public Task load(File file, Listener listener)
+    {
+        return load(file, Integer.MAX_VALUE, Integer.MAX_VALUE, listener);
+    }
+
+    /**
+     * Start loading an image file at a reduced size (see
+     * ImageFileManager.loadImage).
+     *
+     * @param file       The image file.
+     * @param maxWidth   The width the image is needed at.
+     * @param maxHeight  The height the image is needed at.
+     * @param listener   The listener to tell about the progress.
+     * @return The task, to cancel the load with.
+     */
+    public Task load(File file, int maxWidth, int maxHeight, Listener listener)
+    {
+        Task task = new Task();
+        pool.execute(() -> {
+            if(task.isCancelled()) {
+                return;
+            }
+            ThumbnailCache thumbnails = ThumbnailCache.getDefault();
+            // a cached thumbnail only makes a good preview of the full image
+            OFImage cached = maxWidth == Integer.MAX_VALUE
+                    ? thumbnails.getCached(file, ThumbnailCache.DEFAULT_SIZE) : null;
+            Progress progress = new Progress(task, listener, cached);
+            OFImage image = ImageFileManager.loadImage(file, maxWidth, maxHeight,
+                                                       progress, progress);
+            // the thumbnail is made before the image is handed on (edits
+            // change it in place), but only written to disk afterwards, so
+            // that the image is shown without waiting for the disk
+            OFImage thumbnail = null;
+            if(image != null && cached == null && !task.isCancelled()) {
+                thumbnail = ThumbnailCache.makeThumbnail(image, ThumbnailCache.DEFAULT_SIZE);
+            }
+            SwingUtilities.invokeLater(() -> {
+                if(task.isCancelled()) {
+                    return;
+                }
+                if(image == null) {
+                    listener.loadFailed();
+                }
+                else {
+                    listener.imageLoaded(image);
+                }
+            });
+            if(thumbnail != null) {
+                thumbnails.store(file, thumbnail, ThumbnailCache.DEFAULT_SIZE);
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Start loading the thumbnail of an image file (see
+     * ThumbnailCache.getThumbnail).
+     *
+     * @param file        The image file.
+     * @param size        The width and height the thumbnail must fit into.
+     * @param whenLoaded  What to do with the thumbnail (which is null if
+     *                    the file could not be read), on the event thread.
+     * @return The task, to cancel the load with.
+     */
+    public Task loadThumbnail(File file, int size, Consumer<OFImage> whenLoaded)
+    {
+        Task task = new Task();
+        pool.execute(() -> {
+            if(task.isCancelled()) {
+                return;
+            }
+            OFImage thumbnail = ThumbnailCache.getDefault().getThumbnail(file, size);
+            SwingUtilities.invokeLater(() -> {
+                if(!task.isCancelled()) {
+                    whenLoaded.accept(thumbnail);
+                }
+            });
+        });
+        return task;
+    }
+
+    /**
+     * Start decoding a tile of an image that is read tile by tile (see
+     * TiledImageSource.getTile).
+     *
+     * @param source      The source of the tile.
+     * @param level       The level of detail.
+     * @param column      The column of the tile.
+     * @param row         The row of the tile.
+     * @param whenLoaded  What to do with the tile (which is null if it
+     *                    could not be read), on the event thread.
+     * @return The task, to cancel the load with. A tile whose decoding
+     *         has started is still decoded (and cached), but not passed on.
+     */
+    public Task loadTile(TiledImageSource source, int level, int column, int row,
+                         Consumer<BufferedImage> whenLoaded)
+    {
+        Task task = new Task();
+        pool.execute(() -> {
+            if(task.isCancelled()) {
+                return;
+            }
+            BufferedImage tile = source.getTile(level, column, row);
+            SwingUtilities.invokeLater(() -> {
+                if(!task.isCancelled()) {
+                    whenLoaded.accept(tile);
+                }
+            });
+        });
+        return task;
+    }
+
+    /**
+     * Follows the decoding of one image: aborts it when the task is
+     * cancelled, and keeps the preview of the pixels decoded so far (or
+     * shows a cached thumbnail instead).
+     */
+    private static class Progress implements IIOReadProgressListener, IIOReadUpdateListener
+    {
+        private final Task task;
+        private final Listener listener;
+        // The thumbnail shown as the preview, or null
+        private final OFImage cached;
+        private OFImage preview;
+        private double scale;
+        // Every how many pixels one is copied into a decoded preview
+        private int step;
+        private int percent;
+        private long lastPreview;
+
+        public Progress(Task task, Listener listener, OFImage cached)
+        {
+            this.task = task;
+            this.listener = listener;
+            this.cached = cached;
+        }
+
+        // ---- progress ----
+
+        public void imageStarted(ImageReader source, int imageIndex)
+        {
+            lastPreview = System.currentTimeMillis();
+            if(cached != null) {
+                try {
+                    scale = (double) source.getWidth(imageIndex) / cached.getWidth();
+                    preview = cached;
+                    showPreview(preview);
+                }
+                catch(IOException exc) {
+                    // then the decoded pixels are shown
+                }
+            }
+        }
+
+        public void imageProgress(ImageReader source, float percentageDone)
+        {
+            if(task.isCancelled()) {
+                source.abort();
+                return;
+            }
+            percent = (int) percentageDone;
+            long now = System.currentTimeMillis();
+            if(preview != null && now - lastPreview >= PREVIEW_INTERVAL) {
+                lastPreview = now;
+                // the cached thumbnail is complete, and never changed
+                showPreview(preview == cached ? cached : new OFImage(preview));
+            }
+        }
+
+        /**
+         * Pass a preview on to the listener, on the event thread.
+         */
+        private void showPreview(OFImage image)
+        {
+            double copyScale = scale;
+            int copyPercent = percent;
+            SwingUtilities.invokeLater(() -> {
+                if(!task.isCancelled()) {
+                    listener.previewLoaded(image, copyScale, copyPercent);
+                }
+            });
+        }
+
+        public void imageComplete(ImageReader source) {}
+        public void sequenceStarted(ImageReader source, int minIndex) {}
+        public void sequenceComplete(ImageReader source) {}
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {}
+        public void thumbnailProgress(ImageReader source, float percentageDone) {}
+        public void thumbnailComplete(ImageReader source) {}
+        public void readAborted(ImageReader source) {}
+
+        // ---- updates ----
+
+        public void passStarted(ImageReader source, BufferedImage theImage, int pass,
+                                int minPass, int maxPass, int minX, int minY,
+                                int periodX, int periodY, int[] bands) {}
+
+        /**
+         * Copy the decoded pixels that are part of the preview into it.
+         */
+        public void imageUpdate(ImageReader source, BufferedImage theImage,
+                                int minX, int minY, int width, int height,
+                                int periodX, int periodY, int[] bands)
+        {
+            if(cached != null && preview == cached) {
+                return;
+            }
+            if(preview == null) {
+                int longest = Math.max(theImage.getWidth(), theImage.getHeight());
+                step = Math.max(1, (longest + PREVIEW_SIZE - 1) / PREVIEW_SIZE);
+                scale = step;
+                preview = new OFImage((theImage.getWidth() + step - 1) / step,
+                                      (theImage.getHeight() + step - 1) / step,
+                                      theImage.getColorModel().hasAlpha());
+            }
+            int fromY = (minY + step - 1) / step;
+            int toY = Math.min((minY + (height - 1) * periodY) / step + 1, preview.getHeight());
+            for(int y = fromY; y < toY; y++) {
+                for(int x = 0; x < preview.getWidth(); x++) {
+                    preview.setRGB(x, y, theImage.getRGB(x * step, y * step));
+                }
+            }
+        }
+
+        public void passComplete(ImageReader source, BufferedImage theImage) {}
+        public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail,
+                                         int pass, int minPass, int maxPass, int minX, int minY,
+                                         int periodX, int periodY, int[] bands) {}
+        public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail,
+                                    int minX, int minY, int width, int height,
+                                    int periodX, int periodY, int[] bands) {}
+        public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail) {}
+    }
+}
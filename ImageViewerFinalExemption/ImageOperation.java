@@ -0,0 +1,23 @@
+/**
+ * An ImageOperation is an edit that can be applied to an image, such as
+ * a filter, a rotation or a change of size.
+ *
+ * Operations are recorded in the ImageHistory, which may apply them
+ * again later to rebuild a state instead of storing its pixels. An
+ * operation must therefore always give the same result for the same
+ * image, and must not keep a reference to the image it is applied to.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.0
+ */
+public interface ImageOperation
+{
+    /**
+     * Apply this operation to an image.
+     *
+     * @param  image  The image to edit. The operation may change it.
+     * @return The edited image: either the given image itself, changed,
+     *         or a new image.
+     */
+    OFImage apply(OFImage image);
+}
@@ -1,6 +1,20 @@
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.JComponent;
 
@@ -9,18 +23,63 @@ import javax.swing.JComponent;
  * It is constructed as a subclass of JComponent with the added functionality
  * of setting an OFImage that will be displayed on the surface of this
  * component.
+ *
+ * The image can be shown turned or mirrored (see Orientation) without
+ * moving its pixels: the orientation is applied while painting. In the
+ * same way, the image can be zoomed: it is scaled while painting, and
+ * only the part of it that is visible (for example in the viewport of a
+ * scroll pane) is drawn, so zooming needs no extra memory and stays fast
+ * for large images.
+ *
+ * The image is not drawn to the screen directly. The panel keeps a copy
+ * of it in the screen's own pixel format, which Java2D can keep in video
+ * memory and draw (also scaled and turned) without converting pixels.
+ * The copy is only brought up to date when the image changes, and then
+ * only where it changed: if the image comes with a snapshot (see
+ * TiledRaster), as the images from the history do, the tiles it does
+ * not share with the snapshot shown before are the ones that changed.
+ * Only the part of the panel showing them is repainted.
+ *
+ * Images too large to be loaded can be shown from a TiledImageSource
+ * instead: then only the tiles that are visible are decoded, at the
+ * level of detail that fits the zoom factor. Tiles are decoded in the
+ * background (see ImageLoader); until a tile is ready, the part of a
+ * coarser tile that covers it is shown, if there is one, and an overview
+ * of the whole image is decoded first for this.
  * 
  * @author Michael Kölling and David J. Barnes.
- * @version 1.0
+ * @version 1.5
  */
 public class ImagePanel extends JComponent
 {
-    // The current width and height of this panel
+    // The smallest and largest zoom factors
+    public static final double MIN_ZOOM = 1.0 / 32;
+    public static final double MAX_ZOOM = 32;
+
+    // The current width and height of the image, as shown but not zoomed
     private int width, height;
+    // The zoom factor, and whether to smooth the image when zooming
+    private double zoom;
+    private boolean smoothZoom;
 
     // An internal image buffer that is used for painting. For
     // actual display, this image buffer is then copied to screen.
     private OFImage panelImage;
+    // The orientation in which the image is shown
+    private Orientation orientation;
+
+    // A copy of the image in the screen's format, or null until the panel
+    // is first painted on screen; the area of the image (null if none)
+    // that the copy does not show yet; and the snapshot of the image that
+    // the copy shows once that area is copied, or null if not known
+    private BufferedImage displayImage;
+    private Rectangle staleArea;
+    private TiledRaster displayed;
+
+    // The source of the tiles shown instead of an image, or null; and the
+    // tiles being decoded in the background (by level, column and row)
+    private TiledImageSource source;
+    private final Map<Long, ImageLoader.Task> loadingTiles;
 
     /**
      * Create a new, empty ImagePanel.
@@ -30,6 +89,10 @@ public class ImagePanel extends JComponent
         width = 360;    // arbitrary size for empty panel
         height = 240;
         panelImage = null;
+        orientation = Orientation.NORMAL;
+        zoom = 1;
+        smoothZoom = true;
+        loadingTiles = new HashMap<>();
     }
 
     /**
@@ -38,14 +101,114 @@ public class ImagePanel extends JComponent
      * @param image  The image to be displayed.
      */
     public void setImage(OFImage image)
+    {
+        setImage(image, Orientation.NORMAL);
+    }
+
+    /**
+     * Set the image that this panel should show, and the orientation in
+     * which to show it.
+     * 
+     * @param image  The image to be displayed.
+     * @param orientation  The orientation in which to show the image.
+     */
+    public void setImage(OFImage image, Orientation orientation)
     {
         if(image != null) {
-            width = image.getWidth();
-            height = image.getHeight();
+            source = null;
+            cancelTileLoads();
+            Rectangle changed = findChanges(image);
+            boolean sameLayout = panelImage != null && orientation == this.orientation
+                                 && image.getWidth() == panelImage.getWidth()
+                                 && image.getHeight() == panelImage.getHeight();
+            width = orientation.getWidth(image.getWidth(), image.getHeight());
+            height = orientation.getHeight(image.getWidth(), image.getHeight());
             panelImage = image;
-            repaint();
+            this.orientation = orientation;
+            if(changed != null) {
+                staleArea = staleArea == null ? changed : staleArea.union(changed);
+            }
+            if(!sameLayout) {
+                revalidate();
+                repaint();
+            }
+            else if(changed != null) {
+                repaint(toScreen(changed));
+            }
         }
     }
+
+    /**
+     * Show an image that is read tile by tile from a file, instead of an
+     * image in memory. The image is shown in its normal orientation.
+     * 
+     * @param source  The source of the tiles to show.
+     */
+    public void setSource(TiledImageSource source)
+    {
+        cancelTileLoads();
+        this.source = source;
+        panelImage = null;
+        displayImage = null;
+        displayed = null;
+        staleArea = null;
+        orientation = Orientation.NORMAL;
+        width = source.getWidth();
+        height = source.getHeight();
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Set the zoom factor. The point in the middle of the visible area
+     * stays in the middle if possible.
+     * 
+     * @param zoom  The zoom factor (1 shows every pixel as one screen
+     *              pixel); limited to MIN_ZOOM to MAX_ZOOM.
+     */
+    public void setZoom(double zoom)
+    {
+        zoom = Math.max(MIN_ZOOM, Math.min(zoom, MAX_ZOOM));
+        Rectangle visible = getVisibleRect();
+        double factor = zoom / this.zoom;
+        this.zoom = zoom;
+        setSize(getPreferredSize());
+        int centerX = (int) Math.round((visible.x + visible.width / 2.0) * factor);
+        int centerY = (int) Math.round((visible.y + visible.height / 2.0) * factor);
+        scrollRectToVisible(new Rectangle(centerX - visible.width / 2, centerY - visible.height / 2,
+                                          visible.width, visible.height));
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * @return The zoom factor.
+     */
+    public double getZoom()
+    {
+        return zoom;
+    }
+
+    /**
+     * Choose between quality and speed when the image is zoomed.
+     * 
+     * @param smooth  true to interpolate between pixels (better looking),
+     *                false to show the nearest pixel (faster, and shows
+     *                single pixels as squares when zooming in).
+     */
+    public void setSmoothZoom(boolean smooth)
+    {
+        smoothZoom = smooth;
+        repaint();
+    }
+
+    /**
+     * @return true if the image is interpolated when zoomed.
+     */
+    public boolean isSmoothZoom()
+    {
+        return smoothZoom;
+    }
     
     /**
      * Clear the image on this panel.
@@ -54,7 +217,10 @@ public class ImagePanel extends JComponent
     {
         Graphics imageGraphics = panelImage.getGraphics();
         imageGraphics.setColor(Color.LIGHT_GRAY);
-        imageGraphics.fillRect(0, 0, width, height);
+        imageGraphics.fillRect(0, 0, panelImage.getWidth(), panelImage.getHeight());
+        imageGraphics.dispose();
+        staleArea = new Rectangle(0, 0, panelImage.getWidth(), panelImage.getHeight());
+        displayed = null;
         repaint();
     }
     
@@ -70,7 +236,7 @@ public class ImagePanel extends JComponent
      */
     public Dimension getPreferredSize()
     {
-        return new Dimension(width, height);
+        return new Dimension((int) Math.ceil(width * zoom), (int) Math.ceil(height * zoom));
     }
     
     /**
@@ -82,10 +248,287 @@ public class ImagePanel extends JComponent
      */
     public void paintComponent(Graphics g)
     {
-        Dimension size = getSize();
-        g.clearRect(0, 0, size.width, size.height);
-        if(panelImage != null) {
-            g.drawImage(panelImage, 0, 0, null);
+        Rectangle area = getVisibleRect();
+        Rectangle clip = g.getClipBounds();
+        if(clip != null) {
+            area = area.intersection(clip);
+        }
+        if(area.isEmpty()) {
+            return;
+        }
+        g.clearRect(area.x, area.y, area.width, area.height);
+        if(source != null) {
+            paintTiles(g, area);
+            return;
+        }
+        if(panelImage == null) {
+            return;
+        }
+
+        // find the part of the stored image that is visible (with a pixel
+        // to spare for interpolation), going back through zoom and orientation
+        AffineTransform back = orientation.inverse().getTransform(width, height);
+        back.scale(1 / zoom, 1 / zoom);
+        Rectangle source = back.createTransformedShape(area).getBounds();
+        source.grow(1, 1);
+        source = source.intersection(new Rectangle(0, 0, panelImage.getWidth(),
+                                                   panelImage.getHeight()));
+        if(source.isEmpty()) {
+            return;
+        }
+
+        Image shown = getDisplayImage();
+        Graphics2D g2 = (Graphics2D) g.create();
+        if(zoom != 1) {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, smoothZoom
+                                ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                                : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g2.setRenderingHint(RenderingHints.KEY_RENDERING, smoothZoom
+                                ? RenderingHints.VALUE_RENDER_QUALITY
+                                : RenderingHints.VALUE_RENDER_SPEED);
+            g2.scale(zoom, zoom);
+        }
+        g2.transform(orientation.getTransform(panelImage.getWidth(), panelImage.getHeight()));
+        g2.drawImage(shown, source.x, source.y, source.x + source.width, source.y + source.height,
+                     source.x, source.y, source.x + source.width, source.y + source.height, null);
+        g2.dispose();
+    }
+
+    // ---- support methods ----
+
+    /**
+     * Paint the tiles of the tile source that lie in an area of this
+     * panel, at the level of detail that fits the zoom factor. Only tiles
+     * that have been decoded are painted; the visible tiles that have not
+     * are decoded in the background.
+     * 
+     * @param g     The graphics context to paint with.
+     * @param area  The area of this panel to paint.
+     */
+    private void paintTiles(Graphics g, Rectangle area)
+    {
+        int level = TiledImageSource.getLevel(zoom);
+        Rectangle tiles = findTiles(area, level);
+
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, smoothZoom
+                            ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                            : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2.scale(zoom * (1 << level), zoom * (1 << level));
+        for(int row = tiles.y; row < tiles.y + tiles.height; row++) {
+            for(int column = tiles.x; column < tiles.x + tiles.width; column++) {
+                BufferedImage tile = source.getCachedTile(level, column, row);
+                if(tile != null) {
+                    g2.drawImage(tile, column * TiledImageSource.TILE_SIZE,
+                                 row * TiledImageSource.TILE_SIZE, null);
+                }
+                else {
+                    paintCoarser(g2, level, column, row);
+                }
+            }
+        }
+        g2.dispose();
+        loadVisibleTiles(level);
+    }
+
+    /**
+     * Paint the part of a coarser tile that covers a tile that has not
+     * been decoded, if a coarser tile has been.
+     * 
+     * @param g2      The graphics context, scaled to the tile's level.
+     * @param level   The level of the tile.
+     * @param column  The column of the tile.
+     * @param row     The row of the tile.
+     */
+    private void paintCoarser(Graphics2D g2, int level, int column, int row)
+    {
+        int size = TiledImageSource.TILE_SIZE;
+        for(int coarser = level + 1; coarser <= TiledImageSource.MAX_LEVEL; coarser++) {
+            int shift = coarser - level;
+            BufferedImage tile = source.getCachedTile(coarser, column >> shift, row >> shift);
+            if(tile != null) {
+                Graphics2D clipped = (Graphics2D) g2.create();
+                clipped.clipRect(column * size, row * size, size, size);
+                clipped.drawImage(tile, (column >> shift << shift) * size,
+                                  (row >> shift << shift) * size,
+                                  tile.getWidth() << shift, tile.getHeight() << shift, null);
+                clipped.dispose();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Start decoding the visible tiles that have not been decoded (and
+     * the overview), and stop decoding the tiles that are no longer
+     * visible.
+     * 
+     * @param level  The level of detail shown.
+     */
+    private void loadVisibleTiles(int level)
+    {
+        Set<Long> wanted = new HashSet<>();
+        int overview = source.getOverviewLevel();
+        loadTile(overview, 0, 0, wanted);
+        Rectangle tiles = findTiles(getVisibleRect(), level);
+        for(int row = tiles.y; row < tiles.y + tiles.height; row++) {
+            for(int column = tiles.x; column < tiles.x + tiles.width; column++) {
+                loadTile(level, column, row, wanted);
+            }
+        }
+        Iterator<Map.Entry<Long, ImageLoader.Task>> loads = loadingTiles.entrySet().iterator();
+        while(loads.hasNext()) {
+            Map.Entry<Long, ImageLoader.Task> load = loads.next();
+            if(!wanted.contains(load.getKey())) {
+                load.getValue().cancel();
+                loads.remove();
+            }
+        }
+    }
+
+    /**
+     * Start decoding a tile in the background, unless it has been decoded
+     * or is being decoded; repaint when it is ready.
+     * 
+     * @param level   The level of detail.
+     * @param column  The column of the tile.
+     * @param row     The row of the tile.
+     * @param wanted  The keys of the tiles still needed, to add it to.
+     */
+    private void loadTile(int level, int column, int row, Set<Long> wanted)
+    {
+        if(source.getCachedTile(level, column, row) != null) {
+            return;
+        }
+        Long key = ((long) level << 48) | ((long) row << 24) | column;
+        wanted.add(key);
+        if(!loadingTiles.containsKey(key)) {
+            TiledImageSource requested = source;
+            loadingTiles.put(key, ImageLoader.getDefault().loadTile(source, level, column, row,
+                                                                    tile -> {
+                loadingTiles.remove(key);
+                if(tile != null && source == requested) {
+                    repaint();
+                }
+            }));
+        }
+    }
+
+    /**
+     * Stop decoding tiles in the background.
+     */
+    private void cancelTileLoads()
+    {
+        for(ImageLoader.Task load : loadingTiles.values()) {
+            load.cancel();
+        }
+        loadingTiles.clear();
+    }
+
+    /**
+     * Find the tiles at a level of detail that lie in an area of this
+     * panel.
+     * 
+     * @param area   The area of this panel.
+     * @param level  The level of detail.
+     * @return The first column and row (as x and y) and the number of
+     *         columns and rows (as width and height).
+     */
+    private Rectangle findTiles(Rectangle area, int level)
+    {
+        // the size of a tile on screen
+        double span = TiledImageSource.TILE_SIZE * zoom * (1 << level);
+        int firstColumn = (int) (area.x / span);
+        int lastColumn = Math.min((int) ((area.x + area.width) / span), source.getColumns(level) - 1);
+        int firstRow = (int) (area.y / span);
+        int lastRow = Math.min((int) ((area.y + area.height) / span), source.getRows(level) - 1);
+        return new Rectangle(firstColumn, firstRow, Math.max(0, lastColumn - firstColumn + 1),
+                             Math.max(0, lastRow - firstRow + 1));
+    }
+
+    /**
+     * Find the area of a new image that differs from the image the
+     * display copy shows, and remember the new image's snapshot.
+     * 
+     * @param image  The new image.
+     * @return The changed area, in image coordinates; null if nothing
+     *         changed.
+     */
+    private Rectangle findChanges(OFImage image)
+    {
+        TiledRaster previous = displayed;
+        TiledRaster snapshot = image.getSnapshot();
+        displayed = snapshot;
+        if(previous == null || snapshot == null || previous.getWidth() != snapshot.getWidth()
+                || previous.getHeight() != snapshot.getHeight()
+                || previous.hasAlpha() != snapshot.hasAlpha()) {
+            return new Rectangle(0, 0, image.getWidth(), image.getHeight());
+        }
+        Rectangle changed = null;
+        for(int t = 0; t < snapshot.getTileCount(); t++) {
+            boolean tileChanged = snapshot.getTile(t) != previous.getTile(t);
+            if(image.isTileChanged(t)) {
+                // the copy will not match the snapshot after all
+                tileChanged = true;
+                displayed = null;
+            }
+            if(tileChanged) {
+                Rectangle tile = new Rectangle(snapshot.getTileX(t), snapshot.getTileY(t),
+                                               snapshot.getTileWidth(t), snapshot.getTileHeight(t));
+                changed = changed == null ? tile : changed.union(tile);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Return the area of this panel that shows an area of the image.
+     * 
+     * @param area  An area of the image, in image coordinates.
+     * @return The area of the panel, with a pixel to spare on every side
+     *         for interpolation.
+     */
+    private Rectangle toScreen(Rectangle area)
+    {
+        AffineTransform transform = AffineTransform.getScaleInstance(zoom, zoom);
+        transform.concatenate(orientation.getTransform(panelImage.getWidth(),
+                                                       panelImage.getHeight()));
+        Rectangle screen = transform.createTransformedShape(area).getBounds();
+        screen.grow(1, 1);
+        return screen;
+    }
+
+    /**
+     * Return the image to draw: the display copy, brought up to date, or
+     * the image itself while the panel is not on screen.
+     * 
+     * @return The image to draw.
+     */
+    private Image getDisplayImage()
+    {
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        if(configuration == null) {
+            return panelImage;
+        }
+        int imageWidth = panelImage.getWidth();
+        int imageHeight = panelImage.getHeight();
+        int transparency = panelImage.getColorModel().hasAlpha() ? Transparency.TRANSLUCENT
+                                                                  : Transparency.OPAQUE;
+        if(displayImage == null || displayImage.getWidth() != imageWidth
+                || displayImage.getHeight() != imageHeight
+                || displayImage.getTransparency() != transparency) {
+            displayImage = configuration.createCompatibleImage(imageWidth, imageHeight, transparency);
+            staleArea = new Rectangle(0, 0, imageWidth, imageHeight);
+        }
+        if(staleArea != null) {
+            Rectangle area = staleArea.intersection(new Rectangle(0, 0, imageWidth, imageHeight));
+            Graphics2D g = displayImage.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(panelImage, area.x, area.y, area.x + area.width, area.y + area.height,
+                        area.x, area.y, area.x + area.width, area.y + area.height, null);
+            g.dispose();
+            staleArea = null;
         }
+        return displayImage;
     }
 }
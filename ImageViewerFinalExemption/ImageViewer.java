@@ -1,5 +1,4 @@
 import java.awt.BorderLayout;
-import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.awt.Image;
@@ -7,6 +6,8 @@ import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.ArrayList;
 import java.util.InputMismatchException;
 import java.util.List;
@@ -15,6 +16,8 @@ import java.io.*;
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -24,6 +27,7 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JTextField;
 import javax.swing.KeyStroke;
 import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
@@ -43,7 +47,6 @@ public class ImageViewer
 	//static fields:
 	private static final String VERSION = "Version 3.1";
 	private static JFileChooser fileChooser = new JFileChooser(System.getProperty("user.dir"));
-
 	// fields:
 	private JFrame frame;
 	private ImagePanel imagePanel;
@@ -52,6 +55,12 @@ public class ImageViewer
 	private JButton smallerButton;
 	private JButton largerButton;
 	private OFImage currentImage;
+	// The tiles of an image too large to load, shown instead of currentImage
+	private TiledImageSource tiledSource;
+	// The file being loaded in the background, or null
+	private ImageLoader.Task loading;
+	// the orientation in which the current image is shown
+	private Orientation orientation;
 
 	//added fields
 	private JButton undoButton;
@@ -60,13 +69,22 @@ public class ImageViewer
 	private JScrollPane scrollPane;
 	private JButton rotateLeft;
 	private JButton rotateRight;
+	// Save As is off while a slide (decoded at screen size only) is shown
+	private JMenuItem saveItem;
 	private int time;
 	private int counter;
 
 	private List<Filter> filters;
-	private ArrayList<OFImage> undoArraylist;
-	private ArrayList<OFImage> redoArraylist;
-	private ArrayList<OFImage> slideshowPhotos;
+	private ImageHistory history;
+	// The files of the slide show, their decoded images, and the timer
+	// that moves on to the next one
+	private ArrayList<File> slideshowFiles;
+	private SlideCache slideCache;
+	private Timer slideTimer;
+	// The edits waiting or running in the background, and the timer that
+	// shows their progress
+	private JobQueue jobs;
+	private Timer progressTimer;
 
 	/**
 	 * Create an ImageViewer and display its GUI on screen.
@@ -74,9 +92,14 @@ public class ImageViewer
 	public ImageViewer()
 	{
 		currentImage = null;
-		undoArraylist = new ArrayList<>();
-		redoArraylist = new ArrayList<>();
-		slideshowPhotos = new ArrayList<>();
+		orientation = Orientation.NORMAL;
+		history = new ImageHistory();
+		jobs = new JobQueue();
+		progressTimer = new Timer(200, e -> showProgress());
+		slideshowFiles = new ArrayList<>();
+		// slides are only shown at screen size, so only that much is decoded
+		Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+		slideCache = new SlideCache(screen.width, screen.height);
 		filters = createFilters();
 		makeFrame();
 	}
@@ -95,9 +118,101 @@ public class ImageViewer
 			return;  // cancelled
 		}
 		File selectedFile = fileChooser.getSelectedFile();
-		currentImage = ImageFileManager.loadImage(selectedFile);
+		if(!ImageFileManager.fitsInMemory(selectedFile)) {
+			openTiled(selectedFile);
+			return;
+		}
+		loadFile(selectedFile, "File loaded.");
+	}
+
+	/**
+	 * Load an image file in the background, and show it when it has been
+	 * loaded. Until then, the part decoded so far is shown (but cannot be
+	 * edited). A file that is still being loaded is not loaded further.
+	 * 
+	 * @param file  The image file.
+	 * @param doneMessage  The status to show when the image is shown.
+	 */
+	private void loadFile(File file, String doneMessage)
+	{
+		jobs.cancelAll();
+		cancelLoading();
+		showStatus("Loading...");
+		loading = ImageLoader.getDefault().load(file, new ImageLoader.Listener() {
+			private boolean previewShown = false;
+
+			public void previewLoaded(OFImage preview, double scale, int percent)
+			{
+				if(!previewShown) {
+					// the old image is gone once the new one appears
+					previewShown = true;
+					closeTiled();
+					currentImage = null;
+					history.clear();
+					setButtonsEnabled(false);
+					setHistoryButtons();
+					showFilename(file.getPath());
+				}
+				imagePanel.setImage(preview);
+				imagePanel.setZoom(scale);
+				showStatus("Loading... " + percent + "%");
+				frame.pack();
+			}
+
+			public void imageLoaded(OFImage image)
+			{
+				loading = null;
+				closeTiled();
+				currentImage = image;
+				orientation = Orientation.NORMAL;
+				history.reset(currentImage);
+				imagePanel.setImage(currentImage);
+				imagePanel.setZoom(1);
+				setButtonsEnabled(true);
+				saveItem.setEnabled(true);
+				setHistoryButtons();
+				showFilename(file.getPath());
+				showStatus(doneMessage);
+				frame.pack();
+			}
+
+			public void loadFailed()
+			{
+				loading = null;
+				if(previewShown) {
+					close();
+				}
+				showStatus("");
+				JOptionPane.showMessageDialog(frame,
+						"The file was not in a recognized image file format.",
+						"Image Load Error",
+						JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+
+	/**
+	 * Stop loading a file in the background, if one is being loaded.
+	 */
+	private void cancelLoading()
+	{
+		if(loading != null) {
+			loading.cancel();
+			loading = null;
+		}
+	}
 
-		if(currentImage == null) {   // image file was not a valid image
+	/**
+	 * Open an image that is too large to load for viewing only: its tiles
+	 * are read from the file as they come into view. It can be zoomed and
+	 * panned, but not edited.
+	 * 
+	 * @param file  The image file.
+	 */
+	private void openTiled(File file)
+	{
+		TiledImageSource source = TiledImageSource.open(file);
+		if(source == null) {   // image file was not a valid image
 			JOptionPane.showMessageDialog(frame,
 					"The file was not in a recognized image file format.",
 					"Image Load Error",
@@ -105,22 +220,55 @@ public class ImageViewer
 			return;
 		}
 
-		imagePanel.setImage(currentImage);
-		setButtonsEnabled(true);
-		showFilename(selectedFile.getPath());
-		showStatus("File loaded.");
+		jobs.cancelAll();
+		cancelLoading();
+		closeTiled();
+		tiledSource = source;
+		currentImage = null;
+		orientation = Orientation.NORMAL;
+		history.clear();
+		imagePanel.setSource(source);
+		// start with the whole image in view
+		double fit = Math.min(360.0 / source.getWidth(), 240.0 / source.getHeight());
+		imagePanel.setZoom(Math.min(1, fit));
+		setButtonsEnabled(false);
+		smallerButton.setEnabled(true);
+		largerButton.setEnabled(true);
+		setHistoryButtons();
+		showFilename(file.getPath());
+		showStatus("Image too large to edit: " + source.getWidth() + " x "
+				   + source.getHeight() + ", shown in tiles (view only).");
 		frame.pack();
 	}
 
+	/**
+	 * Stop showing a tiled image, if one is shown, and close its file.
+	 */
+	private void closeTiled()
+	{
+		if(tiledSource != null) {
+			tiledSource.close();
+			tiledSource = null;
+		}
+	}
+
 	/**
 	 * Close function: close the current image.
 	 */
 	private void close()
 	{
+		jobs.cancelAll();
+		cancelLoading();
+		if(tiledSource != null) {
+			closeTiled();
+			imagePanel.setImage(new OFImage(360, 240));
+		}
 		currentImage = null;
+		history.clear();
 		imagePanel.clearImage();
 		showFilename(null);
 		setButtonsEnabled(false);
+		setHistoryButtons();
 	}
 	
 	/**
@@ -135,9 +283,35 @@ public class ImageViewer
 				return;  // cancelled
 			}
 			File selectedFile = fileChooser.getSelectedFile();
-			ImageFileManager.saveImage(currentImage, selectedFile);
+			submit(new JobQueue.Job("Save") {
+				private OFImage image;
+				private Orientation shown;
+
+				protected void start()
+				{
+					image = currentImage;
+					shown = orientation;
+				}
 
-			showFilename(selectedFile.getPath());
+				protected void work()
+				{
+					if(image != null) {
+						// the pixels are moved into the orientation they are shown in
+						ImageFileManager.saveImage(run(shown::apply, image), selectedFile);
+					}
+				}
+
+				protected void end(boolean completed)
+				{
+					if(completed && image != null) {
+						showFilename(selectedFile.getPath());
+						showStatus("Saved.");
+					}
+					else {
+						showStatus("Not saved.");
+					}
+				}
+			});
 		}
 	}
 
@@ -146,39 +320,230 @@ public class ImageViewer
 	 */
 	private void quit()
 	{
+		history.clear();  // deletes the undo states kept on disk
 		System.exit(0);
 	}    
 
 	/**
-	 * Apply a given filter to the current image.
+	 * Apply a given filter to the current image. The image is filtered in
+	 * place, in the background; the history keeps its own snapshot of the
+	 * state before. Mirroring only changes the orientation in which the
+	 * image is shown, and filters that look at each pixel on its own are
+	 * applied without moving the pixels into that orientation first.
 	 * 
 	 * @param filter   The filter object to be applied.
 	 */
 	private void applyFilter(Filter filter)
 	{
 		if(currentImage != null) {
-			undoArraylist.add(currentImage);
-			int width = currentImage.getWidth();
-	        int height = currentImage.getHeight();
-	        OFImage newImage = new OFImage(width, height);
-
-	        for(int x = 0; x < width; x++) {
-	            for(int y = 0; y < height; y++) {
-	                newImage.setRGB(x, y, currentImage.getRGB(x, y));
-	            }
-	        }
-	        currentImage = newImage;
-	        filter.apply(currentImage);
-	        imagePanel.setImage(currentImage);
-			frame.pack();
-			showStatus("Applied: " + filter.getName());
-			setUndoButton(true);
+			ImageOperation operation = image -> {
+				filter.apply(image);
+				return image;
+			};
+			if(filter instanceof MirrorFilter) {
+				changeOrientation(Orientation.MIRROR, "Applied: " + filter.getName());
+			}
+			else {
+				applyOperation(filter.getName(), operation, filter.isPointwise(),
+							   "Applied: " + filter.getName());
+			}
 		}
 		else {
 			showStatus("No image loaded.");
 		}
 	}
 
+	/**
+	 * Apply an operation to the current image in the background, after
+	 * all edits submitted before, and record it in the history (with the
+	 * time it took, so that the history can decide whether to store the
+	 * result or to repeat the operation if needed). If the operation is
+	 * cancelled or fails, the image is restored from the history.
+	 * 
+	 * @param name  The name of the operation, to show while it runs.
+	 * @param operation  The operation to be applied.
+	 * @param asStored  true to apply the operation to the image as it is
+	 *                  stored, keeping its orientation; false to move the
+	 *                  pixels into the orientation in which they are shown
+	 *                  first.
+	 * @param doneMessage  The status to show when the operation is done.
+	 */
+	private void applyOperation(String name, ImageOperation operation, boolean asStored,
+								String doneMessage)
+	{
+		submit(new JobQueue.Job(name) {
+			private OFImage image;
+			private ImageOperation edit;
+			private Orientation newOrientation;
+			private OFImage result;
+			private long time;
+
+			protected void start()
+			{
+				image = currentImage;
+				Orientation shown = orientation;
+				edit = asStored ? operation : img -> operation.apply(shown.apply(img));
+				newOrientation = asStored ? shown : Orientation.NORMAL;
+			}
+
+			protected void work()
+			{
+				if(image != null) {
+					long start = System.nanoTime();
+					result = run(edit, image);
+					time = System.nanoTime() - start;
+				}
+			}
+
+			protected void end(boolean completed)
+			{
+				if(image == null || image != currentImage) {
+					return;  // the image was closed or replaced meanwhile
+				}
+				if(completed) {
+					currentImage = result;
+					orientation = newOrientation;
+					history.add(currentImage, orientation, edit, time);
+					imagePanel.setImage(currentImage, orientation);
+					frame.pack();
+					setHistoryButtons();
+					showStatus(doneMessage);
+				}
+				else {
+					// the image may have been partly changed
+					currentImage = history.getImage();
+					imagePanel.setImage(currentImage, orientation);
+					if(getError() != null) {
+						showStatus("Failed: " + getName());
+						JOptionPane.showMessageDialog(frame,
+								getName() + " could not be applied: " + getError(),
+								"Filter Error",
+								JOptionPane.ERROR_MESSAGE);
+					}
+					else {
+						showStatus("Cancelled: " + getName());
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Turn or mirror the current image, after all edits submitted before.
+	 * The pixels stay where they are; only the orientation in which they
+	 * are shown changes.
+	 * 
+	 * @param change  The turn or mirror to apply to the current orientation.
+	 * @param doneMessage  The status to show when it is done.
+	 */
+	private void changeOrientation(Orientation change, String doneMessage)
+	{
+		inTurn("Rotate", () -> {
+			if(currentImage != null) {
+				orientation = orientation.then(change);
+				history.add(currentImage, orientation, null, 0);
+				imagePanel.setImage(currentImage, orientation);
+				frame.pack();
+				setHistoryButtons();
+				showStatus(doneMessage);
+			}
+		});
+	}
+
+	/**
+	 * Do something on the event thread, but only after all edits submitted
+	 * before have been done, and not if it is cancelled before then.
+	 * 
+	 * @param name  The name of the action.
+	 * @param action  The action.
+	 */
+	private void inTurn(String name, Runnable action)
+	{
+		submit(new JobQueue.Job(name) {
+			protected void end(boolean completed)
+			{
+				if(completed) {
+					action.run();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Add a job to the queue of edits, and show its progress while it
+	 * runs.
+	 * 
+	 * @param job  The job.
+	 */
+	private void submit(JobQueue.Job job)
+	{
+		jobs.submit(job);
+		progressTimer.start();
+	}
+
+	/**
+	 * Cancel function: stop the edit that is running, restoring the image
+	 * as it was, and drop the edits waiting after it.
+	 */
+	private void cancelJobs()
+	{
+		if(!jobs.isIdle()) {
+			jobs.cancelAll();
+			showStatus("Cancelling...");
+		}
+	}
+
+	/**
+	 * Show how far the running edit has got, or stop showing progress if
+	 * there is none.
+	 */
+	private void showProgress()
+	{
+		JobQueue.Job job = jobs.getCurrent();
+		if(job == null) {
+			progressTimer.stop();
+		}
+		else if(!job.isCancelled()) {
+			showStatus(job.getName() + "... " + job.getPercent() + "% (Esc to cancel)");
+		}
+	}
+
+	/**
+	 * Filter chain function: ask the user for a sequence of filters and
+	 * apply them together, as a single edit. Consecutive point filters in
+	 * the chain are fused into a single pass over the image.
+	 */
+	private void applyFilterChain()
+	{
+		if(currentImage == null) {
+			showStatus("No image loaded.");
+			return;
+		}
+		String input = JOptionPane.showInputDialog(frame,
+				"Enter the filters to apply, separated by commas\n(for example: Grayscale, Lighter, Threshold)",
+				"Filter Chain",
+				JOptionPane.PLAIN_MESSAGE);
+		if(input == null || input.trim().isEmpty()) {
+			return;  // cancelled
+		}
+
+		List<Filter> chain = new ArrayList<>();
+		for(String name : input.split(",")) {
+			Filter filter = findFilter(name.trim());
+			if(filter == null) {
+				JOptionPane.showMessageDialog(frame,
+						"There is no filter called '" + name.trim() + "'.",
+						"Filter Chain Error",
+						JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			chain.add(filter);
+		}
+		FilterPipeline pipeline = new FilterPipeline(input.trim(), chain);
+		applyOperation(pipeline.getName(), pipeline, pipeline.isPointwise(),
+					   "Applied: " + pipeline.getName());
+	}
+
 	/**
 	 * 'About' function: show the 'about' box.
 	 */
@@ -191,141 +556,183 @@ public class ImageViewer
 	}
 
 	/**
-	 * Make the current picture larger.
+	 * Show the current picture larger. Only the view is zoomed; the
+	 * image itself does not change (see Resize to change its size).
 	 */
 	private void makeLarger()
 	{
-		if(currentImage != null) {
-			undoArraylist.add(currentImage);
-			// create new image with double size
-			int width = currentImage.getWidth();
-			int height = currentImage.getHeight();
-			OFImage newImage = new OFImage(width * 2, height * 2);
-
-			// copy pixel data into new image
-			for(int y = 0; y < height; y++) {
-				for(int x = 0; x < width; x++) {
-					Color col = currentImage.getPixel(x, y);
-					newImage.setPixel(x * 2, y * 2, col);
-					newImage.setPixel(x * 2 + 1, y * 2, col);
-					newImage.setPixel(x * 2, y * 2 + 1, col);
-					newImage.setPixel(x * 2+1, y * 2 + 1, col);
-				}
-			}
-
-			currentImage = newImage;
-			imagePanel.setImage(currentImage);
-			frame.pack();
-			setUndoButton(true);
+		if(currentImage != null || tiledSource != null) {
+			setZoom(imagePanel.getZoom() * 2);
 		}
 	}    
 
 
 	/**
-	 * Make the current picture smaller.
+	 * Show the current picture smaller. Only the view is zoomed; the
+	 * image itself does not change.
 	 */
 	private void makeSmaller()
 	{	
-		if(currentImage != null) {
-			undoArraylist.add(currentImage);
-			// create new image with double size
-			int width = currentImage.getWidth() / 2;
-			int height = currentImage.getHeight() / 2;
-			OFImage newImage = new OFImage(width, height);
-
-			// copy pixel data into new image
-			for(int y = 0; y < height; y++) {
-				for(int x = 0; x < width; x++) {
-					newImage.setPixel(x, y, currentImage.getPixel(x * 2, y * 2));
-				}
-			}
-
-			currentImage = newImage;
-			imagePanel.setImage(currentImage);
-			frame.pack();
-			setUndoButton(true);
+		if(currentImage != null || tiledSource != null) {
+			setZoom(imagePanel.getZoom() / 2);
 		}
 	}
 
 	/**
-	 * RotateLeft: rotate the image left by 90 degrees.
+	 * Set the zoom factor of the view, and show it in the status bar.
+	 * 
+	 * @param zoom  The new zoom factor.
 	 */
-	private void rotateLeft() {
-		undoArraylist.add(currentImage);
+	private void setZoom(double zoom)
+	{
+		imagePanel.setZoom(zoom);
+		showStatus("Zoom: " + Math.round(imagePanel.getZoom() * 100) + "%");
+	}
 
-		int height = currentImage.getHeight();
-		int width = currentImage.getWidth();
-		OFImage rotatedImg = new OFImage(height, width);
+	/**
+	 * Resize function: ask the user for a new size and a way of
+	 * enlarging, and resize the current image to it in one step.
+	 */
+	private void askResize()
+	{
+		if(currentImage == null) {
+			showStatus("No image loaded.");
+			return;
+		}
+		int shownWidth = orientation.getWidth(currentImage.getWidth(), currentImage.getHeight());
+		int shownHeight = orientation.getHeight(currentImage.getWidth(), currentImage.getHeight());
+		JTextField widthField = new JTextField(Integer.toString(shownWidth), 6);
+		JTextField heightField = new JTextField(Integer.toString(shownHeight), 6);
+		JComboBox<Resampler.Method> methodBox = new JComboBox<>(Resampler.Method.values());
+		methodBox.setSelectedItem(Resampler.Method.BICUBIC);
+
+		JPanel panel = new JPanel(new GridLayout(0, 2, 6, 6));
+		panel.add(new JLabel("Width:"));
+		panel.add(widthField);
+		panel.add(new JLabel("Height:"));
+		panel.add(heightField);
+		panel.add(new JLabel("Enlarge with:"));
+		panel.add(methodBox);
+		int choice = JOptionPane.showConfirmDialog(frame, panel, "Resize",
+				JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+		if(choice != JOptionPane.OK_OPTION) {
+			return;  // cancelled
+		}
 
-		for(int x = 0; x < width; x++) {
-			for(int y = 0; y < height; y++) {
-				rotatedImg.setPixel(y, width - x - 1, currentImage.getPixel(x, y));
-			}
+		int width, height;
+		try {
+			width = Integer.parseInt(widthField.getText().trim());
+			height = Integer.parseInt(heightField.getText().trim());
 		}
-		currentImage = rotatedImg;
-		showStatus("Rotated image 90 degrees left");
-		imagePanel.setImage(currentImage);
-		frame.pack();
-		setUndoButton(true);	
+		catch(NumberFormatException e) {
+			width = height = 0;
+		}
+		if(width < 1 || height < 1) {
+			JOptionPane.showMessageDialog(frame,
+					"The width and height must be whole numbers of at least 1.",
+					"Resize Error",
+					JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		// the size is given as shown; the stored pixels may be turned
+		resize(orientation.getWidth(width, height), orientation.getHeight(width, height),
+		       (Resampler.Method) methodBox.getSelectedItem());
 	}
 
 	/**
-	 * RotateRight: rotate the image right by 90 degrees.
+	 * Resize the current image, as it is stored, in one step. Resampling
+	 * treats both directions alike, so the pixels need not be moved into
+	 * the orientation they are shown in first.
+	 * 
+	 * @param width  The new width of the stored image.
+	 * @param height  The new height of the stored image.
+	 * @param method  The interpolation method used for enlarging.
 	 */
-	private void rotateRight() {
-		undoArraylist.add(currentImage);
+	private void resize(int width, int height, Resampler.Method method)
+	{
+		Resampler resampler = new Resampler(method);
+		applyOperation("Resize", image -> resampler.resize(image, width, height), true,
+					   "Resized to " + orientation.getWidth(width, height) + " x "
+					   + orientation.getHeight(width, height));
+	}
 
-		int height = currentImage.getHeight();
-		int width = currentImage.getWidth();
-		OFImage rotatedImg = new OFImage(height, width);
+	/**
+	 * RotateLeft: rotate the image left by 90 degrees.
+	 */
+	private void rotateLeft() {
+		changeOrientation(Orientation.ROTATE_270, "Rotated image 90 degrees left");
+	}
 
-		for(int x = 0; x < width; x++) {
-			for(int y = 0; y < height; y++) {
-				rotatedImg.setPixel(height - y - 1, x, currentImage.getPixel(x, y));
-			}
-		}
-		showStatus("Rotated image 90 degrees right");
-		currentImage = rotatedImg;
-		imagePanel.setImage(currentImage);
-		frame.pack();
-		setUndoButton(true);
+	/**
+	 * RotateRight: rotate the image right by 90 degrees.
+	 */
+	private void rotateRight() {
+		changeOrientation(Orientation.ROTATE_90, "Rotated image 90 degrees right");
 	}
 
 	/**
-	 * Undo: undo an action that has been applied to image.
+	 * Undo: undo an action that has been applied to image (after the
+	 * edits still running have been done).
 	 */
 	private void undo()
 	{
-		redoArraylist.add(currentImage); //Adds image before undo to re-do array list
-		currentImage = undoArraylist.get(undoArraylist.size() - 1); //Sets current image to last element of undo array list
-		undoArraylist.remove(undoArraylist.size() - 1); //Removes last element of array list
-		imagePanel.setImage(currentImage);
-		statusLabel.setText("Feature un-done");
-		frame.pack();
-
-		if(undoArraylist.size() == 0) {
-    			setUndoButton(false);
-		}
-		setRedoButton(true); //Make re-do button visible
+		stepHistory("Undo", true, "Feature un-done");
 	}
 
 	/** 
-	 * Redo: re-do the action that has been undone.
+	 * Redo: re-do the action that has been undone (after the edits still
+	 * running have been done).
 	 */	
 	private void redo()
 	{	
-		undoArraylist.add(currentImage); //Add current image to undo array list 
-		currentImage = redoArraylist.get(redoArraylist.size() - 1); //make current image equal to last image in re-do
-		redoArraylist.remove(redoArraylist.size() - 1); //remove last image from re-do
-		imagePanel.setImage(currentImage); 
-		statusLabel.setText("Feature re-done");
-		frame.pack();
-		
-		if(redoArraylist.size() == 0) {
-			setRedoButton(false);
-		}
+		stepHistory("Redo", false, "Feature re-done");
+	}
 
-		setUndoButton(true);
+	/**
+	 * Step back or forward in the history, in turn with the edits. The
+	 * image is rebuilt in the background, since that may replay edits or
+	 * read a state back from disk; it is shown once it is done.
+	 * 
+	 * @param name  The name of the action.
+	 * @param back  true to undo, false to redo.
+	 * @param doneMessage  The status message to show when done.
+	 */
+	private void stepHistory(String name, boolean back, String doneMessage)
+	{
+		submit(new JobQueue.Job(name) {
+			private OFImage image;
+			private OFImage result;
+			private Orientation shown;
+
+			protected void start()
+			{
+				image = currentImage;
+			}
+
+			protected void work()
+			{
+				if(image != null && (back ? history.canUndo() : history.canRedo())) {
+					result = back ? history.undo() : history.redo();
+					shown = history.getOrientation();
+				}
+			}
+
+			protected void end(boolean completed)
+			{
+				// once rebuilt, the history has moved, so the result is
+				// shown even if cancelled since; but not if the image has
+				// been closed or replaced meanwhile
+				if(result == null || image != currentImage) {
+					return;
+				}
+				currentImage = result;
+				orientation = shown;
+				imagePanel.setImage(currentImage, orientation);
+				statusLabel.setText(doneMessage);
+				frame.pack();
+				setHistoryButtons();
+			}
+		});
 	}
 	
 	/**
@@ -333,13 +740,7 @@ public class ImageViewer
 	 */
 	
 	private void reload() {
-		File selectedFile = fileChooser.getSelectedFile();
-		currentImage = ImageFileManager.loadImage(selectedFile);
-		imagePanel.setImage(currentImage);
-		statusLabel.setText("Reloaded");
-		frame.pack();
-		setUndoButton(false);
-		setRedoButton(false);
+		loadFile(fileChooser.getSelectedFile(), "Reloaded");
 	}
 
 	// ---- support methods ----
@@ -386,27 +787,18 @@ public class ImageViewer
 	}
 
 	/**
-	 * Enable or disable undo button.
-	 * 
-	 * @param status 'true' to enable the button, 'false' to disable.
+	 * Enable or disable the undo and re-do buttons, depending on whether
+	 * the history has states to go back or forward to.
 	 */
-	private void setUndoButton(boolean status) 
+	private void setHistoryButtons() 
 	{	
-		undoButton.setEnabled(status);
-	}
-
-	/**
-	 * Enable or disable re-do button.
-	 * 
-	 * @param status 'true' to enable the button, 'false' to disable.
-	 */
-	private void setRedoButton(boolean status) 
-	{	
-		redoButton.setEnabled(status);
+		undoButton.setEnabled(history.canUndo());
+		redoButton.setEnabled(history.canRedo());
 	}
 	
 	/**
-	 * Fills array list with photos to be displayed in a slide show.
+	 * Adds a photo to the slide show. Only the file is kept; the first
+	 * slides are loaded in the background, ready for the show.
 	 */
 	public void fillArraylist()
     {
@@ -416,16 +808,10 @@ public class ImageViewer
 			return;  // cancelled
 		}
 		File selectedFile = fileChooser.getSelectedFile();
-		currentImage = ImageFileManager.loadImage(selectedFile);
-		slideshowPhotos.add(currentImage); //Add photo to array list of images
-		
-		if(currentImage == null) {   // image file was not a valid image
-			JOptionPane.showMessageDialog(frame,
-					"The file was not in a recognized image file format.",
-					"Image Load Error",
-					JOptionPane.ERROR_MESSAGE);
-			return; }
-		} 
+		slideshowFiles.add(selectedFile); //Add photo to the list of slides
+		slideCache.prefetch(slideshowFiles, 0);
+		showStatus("Slide " + slideshowFiles.size() + " added.");
+	}
 	
 	/**
 	 * Set display time per photo for slide show.
@@ -444,49 +830,97 @@ public class ImageViewer
 	}
 	
 	/**
-	 * Displays the images selected by user in a slide show.
+	 * Displays the images selected by user in a slide show. Each slide is
+	 * taken from the slide cache, which loads the next few ahead while
+	 * one is shown.
 	 */
 	public void startSlideShow()
 	{
-		try {
-			if (time == 0) {
-				JOptionPane.showMessageDialog(null,"You have not selected how long you would like each image to display for. ");
-				close();
+		if (slideshowFiles.isEmpty()) {
+			JOptionPane.showMessageDialog(null,"There are no images to display.");
+			return;
+		}
+		if (time == 0) {
+			JOptionPane.showMessageDialog(null,"You have not selected how long you would like each image to display for. ");
+			close();
+			return;
+		}
+		if (slideTimer != null) {
+			slideTimer.stop();
+		}
+		jobs.cancelAll();
+		cancelLoading();
+		closeTiled();
+		counter = 0;
+		showStatus("Slide Show Loaded");
+		showSlide(counter);
+		setButtonsEnabled(true);
+
+		slideTimer = new Timer(time, new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				counter++;
+				if (counter < slideshowFiles.size()) {
+					showSlide(counter);
+				}
+				//Checks if it has looped through every image and clears the list if so
+				if (counter >= slideshowFiles.size() - 1) { 
+					showStatus("Slide Show Complete!");
+					slideTimer.stop();
+					slideshowFiles.clear();
+				}
 			}
-			counter = 0;
-			showStatus("Slide Show Loaded");
-			filenameLabel.setText("Image " + (counter + 1) + " displaying");
-			
-			currentImage = slideshowPhotos.get(counter);
+		});
+		slideTimer.start();
+	}
+
+	/**
+	 * Show a slide of the slide show as soon as it has been loaded (at
+	 * once if it was loaded ahead), and load the slides after it ahead.
+	 * The slide can be edited but not saved, as it is only decoded at
+	 * screen size.
+	 * 
+	 * @param index  The index of the slide.
+	 */
+	private void showSlide(int index)
+	{
+		File file = slideshowFiles.get(index);
+		slideCache.fetch(file, image -> {
+			if (index != counter) {
+				return;  // loaded too late: the show has moved on
+			}
+			if (image == null) {
+				showStatus("Slide " + (index + 1) + " could not be read.");
+				return;
+			}
+			// the cached slide is shared: edits and Close change only a copy
+			currentImage = new OFImage(image);
+			orientation = Orientation.NORMAL;
+			history.reset(currentImage);
+			setHistoryButtons();
+			saveItem.setEnabled(false);
 			imagePanel.setImage(currentImage);
-			setButtonsEnabled(true);
-			
-			frame.pack();	
-				Timer timer = new Timer(time, new ActionListener()
-				{
-					public void actionPerformed(ActionEvent e)
-					{
-						counter++;
-						currentImage = slideshowPhotos.get(counter); 
-						imagePanel.setImage(currentImage); 
-						filenameLabel.setText("Image " + (counter + 1) + " displaying");
-						frame.pack();	
-						//Checks if it has looped through every image in array list and clears the array list if so
-						if (counter == (slideshowPhotos.size() - 1) ) { 
-							showStatus("Slide Show Complete!");
-							imagePanel.setImage(currentImage); 
-							slideshowPhotos.clear();
-						}
-					}
-				});
-				timer.start();
+			filenameLabel.setText("Image " + (index + 1) + " displaying");
+			frame.pack();
+		});
+		slideCache.prefetch(slideshowFiles, index + 1);
+	}
+
+	/**
+	 * Find one of the known filters by its name (ignoring case).
+	 * 
+	 * @param name  The name of the filter.
+	 * @return The filter, or null if there is no filter with this name.
+	 */
+	private Filter findFilter(String name)
+	{
+		for(Filter filter : filters) {
+			if(filter.getName().equalsIgnoreCase(name)) {
+				return filter;
 			}
-		catch(ArrayIndexOutOfBoundsException e) {
-			JOptionPane.showMessageDialog(null,"There are no images to display.");
-		}
-		catch(Exception e) {
-			JOptionPane.showMessageDialog(null,"Error starting slide show, please try again.");
 		}
+		return null;
 	}
 
 	/**
@@ -502,11 +936,16 @@ public class ImageViewer
 		filterList.add(new InvertFilter("Invert"));
 		filterList.add(new SolarizeFilter("Solarize"));
 		filterList.add(new SmoothFilter("Smooth"));
+		filterList.add(new SmoothFilter("Blur", 8));
 		filterList.add(new PixelizeFilter("Pixelize"));
+		filterList.add(new PixelizeFilter("Mosaic", 16, true));
 		filterList.add(new MirrorFilter("Mirror"));
 		filterList.add(new GrayScaleFilter("Grayscale"));
 		filterList.add(new EdgeFilter("Edge Detection"));
+		filterList.add(new MorphologyFilter("Dilate", MorphologyFilter.Mode.DILATE));
+		filterList.add(new MorphologyFilter("Erode", MorphologyFilter.Mode.ERODE));
 		filterList.add(new FishEyeFilter("Fish Eye"));
+		filterList.add(new FishEyeFilter("Smooth Fish Eye", FishEyeFilter.DEFAULT_STRENGTH, true));
 		filterList.add(new SepiaFilter("Sepia"));
 		return filterList;
 	}
@@ -520,6 +959,19 @@ public class ImageViewer
 	{
 
 		frame = new JFrame("ImageViewer");
+		// closing the window quits, so that the history deletes its files
+		frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+		frame.addWindowListener(new WindowAdapter() {
+			public void windowClosing(WindowEvent e)
+			{
+				quit();
+			}
+		});
+		// show the thumbnail of the selected photo, from the thumbnail cache
+		// (once: the file chooser is shared by all viewers)
+		if(fileChooser.getAccessory() == null) {
+			fileChooser.setAccessory(new ThumbnailPreview(fileChooser));
+		}
 		JPanel contentPane = (JPanel)frame.getContentPane();
 		contentPane.setBorder(new EmptyBorder(20, 20, 20, 20));
 
@@ -586,8 +1038,7 @@ public class ImageViewer
 		// building is done - arrange the components      
 		showFilename(null);
 		setButtonsEnabled(false);
-		setUndoButton(false);
-		setRedoButton(false);
+		setHistoryButtons();
 		frame.pack();
 
 		// place the frame at the center of the screen and show
@@ -627,10 +1078,10 @@ public class ImageViewer
 		menu.add(item);
 		menu.addSeparator();
 
-		item = new JMenuItem("Save As...");
-		item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, SHORTCUT_MASK));
-		item.addActionListener(e -> saveAs());
-		menu.add(item);
+		saveItem = new JMenuItem("Save As...");
+		saveItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, SHORTCUT_MASK));
+		saveItem.addActionListener(e -> saveAs());
+		menu.add(saveItem);
 		menu.addSeparator();
 
 		item = new JMenuItem("Quit");
@@ -648,6 +1099,45 @@ public class ImageViewer
 			item.addActionListener(e -> applyFilter(filter));
 			menu.add(item);
 		}
+		menu.addSeparator();
+
+		item = new JMenuItem("Filter Chain...");
+		item.addActionListener(e -> applyFilterChain());
+		menu.add(item);
+
+		item = new JMenuItem("Resize...");
+		item.addActionListener(e -> askResize());
+		menu.add(item);
+		menu.addSeparator();
+
+		item = new JMenuItem("Cancel");
+		item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0));
+		item.addActionListener(e -> cancelJobs());
+		menu.add(item);
+
+		// create the View menu
+		menu = new JMenu("View");
+		menubar.add(menu);
+
+		item = new JMenuItem("Zoom In");
+		item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, SHORTCUT_MASK));
+		item.addActionListener(e -> makeLarger());
+		menu.add(item);
+
+		item = new JMenuItem("Zoom Out");
+		item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, SHORTCUT_MASK));
+		item.addActionListener(e -> makeSmaller());
+		menu.add(item);
+
+		item = new JMenuItem("Actual Size");
+		item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_0, SHORTCUT_MASK));
+		item.addActionListener(e -> setZoom(1));
+		menu.add(item);
+		menu.addSeparator();
+
+		JCheckBoxMenuItem smoothItem = new JCheckBoxMenuItem("Smooth Zoom", true);
+		smoothItem.addActionListener(e -> imagePanel.setSmoothZoom(smoothItem.isSelected()));
+		menu.add(smoothItem);
 
 		// create the Help menu
 		menu = new JMenu("Help");
@@ -1,12 +1,10 @@
-import java.awt.Color;
-
 /**
  * An image filter to invert colors.
  * 
  * @author Michael Kölling and David J. Barnes.
- * @version 1.0
+ * @version 1.2
  */
-public class InvertFilter extends Filter
+public class InvertFilter extends LookupFilter
 {
     /**
      * Constructor for objects of class InvertFilter.
@@ -18,21 +16,36 @@ public class InvertFilter extends Filter
     }
 
     /**
-     * Apply this filter to an image.
+     * Apply this filter to a range of packed pixels, in place. Uses the
+     * SIMD-friendly kernel unless it is switched off, and the lookup
+     * table otherwise.
+     *
+     * @param  pixels  The packed pixels.
+     * @param  from    The index of the first pixel to change.
+     * @param  to      The index after the last pixel to change.
+     */
+    public void filterPixels(int[] pixels, int from, int to)
+    {
+        if(PixelKernels.isEnabled()) {
+            PixelKernels.invert(pixels, from, to);
+        }
+        else {
+            super.filterPixels(pixels, from, to);
+        }
+    }
+
+    /**
+     * Create the lookup table for this filter: every channel value is
+     * replaced by its opposite.
      * 
-     * @param  image  The image to be changed by this filter.
+     * @return The lookup table of this filter.
      */
-    public void apply(OFImage image)
+    protected LookupTable createLookupTable()
     {
-        int height = image.getHeight();
-        int width = image.getWidth();
-        for(int y = 0; y < height; y++) {
-            for(int x = 0; x < width; x++) {
-                Color pix = image.getPixel(x, y);
-                image.setPixel(x, y, new Color(255 - pix.getRed(),
-                                               255 - pix.getGreen(),
-                                               255 - pix.getBlue()));
-            }
+        int[] table = new int[LookupTable.CHANNEL_SIZE];
+        for(int value = 0; value < table.length; value++) {
+            table[value] = 255 - value;
         }
+        return LookupTable.perChannel(table);
     }
 }
@@ -0,0 +1,240 @@
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * A JobQueue runs edits of an image (jobs) one after another on a
+ * background thread, so that slow filters do not stop the user interface
+ * from responding.
+ *
+ * Every job has three steps. It starts on the Swing event thread (where
+ * it can take the current image), does its work on the background thread
+ * (where it should only touch that image), and ends on the event thread
+ * again (where it can record the result in the history and show it). The
+ * next job only starts when the one before has ended, so every job sees
+ * the result of the one before, and jobs that only need the event thread
+ * (like turning the image) are done in their place in the queue.
+ *
+ * The work of a job is followed by a FilterProgress, so the filters it
+ * applies report how far they have got, and stop when the job is
+ * cancelled. A job that is cancelled (or fails) is told so when it ends,
+ * so it can restore the image as it was.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.2
+ */
+public class JobQueue
+{
+    private final ExecutorService worker;
+    // The jobs submitted and not yet ended, oldest first (event thread only)
+    private final List<Job> jobs;
+
+    /**
+     * An edit run by a JobQueue.
+     */
+    public static abstract class Job
+    {
+        private final String name;
+        private final FilterProgress progress;
+        private Throwable error;
+
+        /**
+         * Create a job.
+         * @param name The name of the job, to show to the user.
+         */
+        public Job(String name)
+        {
+            this.name = name;
+            progress = new FilterProgress();
+        }
+
+        /**
+         * @return The name of this job.
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return How far the filter this job is running has got, from 0
+         *         to 100.
+         */
+        public int getPercent()
+        {
+            return progress.getPercent();
+        }
+
+        /**
+         * @return The error that stopped the work of this job, or null.
+         */
+        public Throwable getError()
+        {
+            return error;
+        }
+
+        /**
+         * Cancel this job. If it has not started, it never will; if it is
+         * working, it stops as soon as its filter checks.
+         */
+        public void cancel()
+        {
+            progress.cancel();
+        }
+
+        /**
+         * @return true if this job has been cancelled.
+         */
+        public boolean isCancelled()
+        {
+            return progress.isCancelled();
+        }
+
+        /**
+         * Apply an operation to an image, following it with this job's
+         * progress. To be called from work.
+         *
+         * @param  operation  The operation to apply.
+         * @param  image      The image to apply it to.
+         * @return The result of the operation.
+         */
+        protected OFImage run(ImageOperation operation, OFImage image)
+        {
+            return progress.run(operation, image);
+        }
+
+        /**
+         * Start this job. Called on the event thread.
+         */
+        protected void start()
+        {
+        }
+
+        /**
+         * Do the work of this job. Called on the background thread.
+         * Throws CancellationException if the job was cancelled.
+         */
+        protected void work()
+        {
+        }
+
+        /**
+         * End this job. Called on the event thread, if the job started.
+         * @param completed true if the work was done; false if it was
+         *                  cancelled or failed (see getError).
+         */
+        protected abstract void end(boolean completed);
+    }
+
+    /**
+     * Create a queue with its own background thread.
+     */
+    public JobQueue()
+    {
+        worker = Executors.newSingleThreadExecutor(work -> {
+            Thread thread = new Thread(work, "Image jobs");
+            thread.setDaemon(true);
+            return thread;
+        });
+        jobs = new ArrayList<>();
+    }
+
+    /**
+     * Add a job to the end of the queue. Must be called on the event
+     * thread.
+     *
+     * @param job  The job.
+     */
+    public void submit(Job job)
+    {
+        jobs.add(job);
+        worker.execute(() -> runJob(job));
+    }
+
+    /**
+     * Cancel all jobs in the queue, including the one running. Must be
+     * called on the event thread.
+     */
+    public void cancelAll()
+    {
+        for(Job job : jobs) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * Return the job that is running (or about to), if any. Must be called
+     * on the event thread.
+     *
+     * @return The oldest job that has not ended, or null.
+     */
+    public Job getCurrent()
+    {
+        return jobs.isEmpty() ? null : jobs.get(0);
+    }
+
+    /**
+     * @return true if no job is waiting or running. Must be called on the
+     *         event thread.
+     */
+    public boolean isIdle()
+    {
+        return jobs.isEmpty();
+    }
+
+    /**
+     * Run the three steps of a job. Called on the background thread.
+     */
+    private void runJob(Job job)
+    {
+        if(job.isCancelled()) {
+            onEventThread(() -> jobs.remove(job));
+            return;
+        }
+        boolean completed = false;
+        try {
+            onEventThread(job::start);
+            job.work();
+            completed = true;
+        }
+        catch(CancellationException exc) {
+            // ended as not completed
+        }
+        catch(RuntimeException | Error exc) {
+            job.error = exc;
+        }
+        finally {
+            // whatever happened, the job leaves the queue and is ended
+            boolean done = completed;
+            onEventThread(() -> {
+                jobs.remove(job);
+                job.end(done && !job.isCancelled());
+            });
+        }
+    }
+
+    /**
+     * Run code on the event thread, and wait until it has run.
+     */
+    private static void onEventThread(Runnable code)
+    {
+        try {
+            SwingUtilities.invokeAndWait(code);
+        }
+        catch(InvocationTargetException exc) {
+            Throwable cause = exc.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        catch(InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
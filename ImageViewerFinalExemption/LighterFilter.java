@@ -4,8 +4,13 @@
  * @author Michael Kölling and David J. Barnes.
  * @version 1.0
  */
-public class LighterFilter extends Filter
+public class LighterFilter extends LookupFilter
 {
+    // the scale factor used by java.awt.Color to brighten a color, and
+    // the smallest non-zero component value it will produce
+    private static final double FACTOR = 0.7;
+    private static final int MIN_VALUE = (int)(1.0 / (1.0 - FACTOR));
+
 	/**
 	 * Constructor for objects of class LighterFilter.
      * @param name The name of the filter.
@@ -16,19 +21,23 @@ public class LighterFilter extends Filter
 	}
 
     /**
-     * Apply this filter to an image.
+     * Create the lookup table for this filter: every channel is scaled
+     * up the same way Color.brighter() does it.
      * 
-     * @param  image  The image to be changed by this filter.
+     * @return The lookup table of this filter.
      */
-    public void apply(OFImage image)
+    protected LookupTable createLookupTable()
     {
-        int height = image.getHeight();
-        int width = image.getWidth();
-        for(int y = 0; y < height; y++) {
-            for(int x = 0; x < width; x++) {
-                image.setPixel(x, y, image.getPixel(x, y).brighter());
+        int[] table = new int[LookupTable.CHANNEL_SIZE];
+        for(int value = 0; value < table.length; value++) {
+            int scaled = value;
+            if(scaled > 0 && scaled < MIN_VALUE) {
+                scaled = MIN_VALUE;
             }
+            table[value] = Math.min((int)(scaled / FACTOR), 255);
         }
+        // pure black has no hue to scale, so it becomes a dark gray
+        return LookupTable.perChannel(table, table, table,
+                                      OFImage.rgb(MIN_VALUE, MIN_VALUE, MIN_VALUE));
     }
-
 }
@@ -0,0 +1,60 @@
+/**
+ * LookupFilter is an abstract superclass for point filters that can
+ * describe their effect as a LookupTable (for example, making an image
+ * darker or inverting its colors).
+ *
+ * The table is built the first time the filter is used and then applied
+ * to every pixel of the image in a single tight loop.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.0
+ */
+public abstract class LookupFilter extends PointFilter
+{
+    private volatile LookupTable table;
+
+    /**
+     * Create a new lookup filter with a given name.
+     * @param name The name of the filter.
+     */
+    public LookupFilter(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Apply the lookup table of this filter to a range of packed pixels,
+     * in place.
+     *
+     * @param  pixels  The packed pixels.
+     * @param  from    The index of the first pixel to change.
+     * @param  to      The index after the last pixel to change.
+     */
+    public void filterPixels(int[] pixels, int from, int to)
+    {
+        getLookupTable().apply(pixels, from, to);
+    }
+
+    /**
+     * Return the lookup table that describes this filter.
+     *
+     * @return The lookup table of this filter.
+     */
+    public LookupTable getLookupTable()
+    {
+        LookupTable result = table;
+        if(result == null) {
+            result = createLookupTable();
+            table = result;
+        }
+        return result;
+    }
+
+    /**
+     * Create the lookup table that describes this filter. This method is
+     * called once, the first time the table is needed.
+     *
+     * @return The lookup table of this filter.
+     */
+    protected abstract LookupTable createLookupTable();
+}
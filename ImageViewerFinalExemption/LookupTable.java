@@ -0,0 +1,236 @@
+/**
+ * A LookupTable describes a point operation - a change to an image where
+ * the new value of each pixel depends only on the old value of that same
+ * pixel - as precomputed tables, so that it can be applied to packed
+ * pixels without any per-pixel arithmetic.
+ *
+ * There are two kinds of tables:
+ *
+ * Channel tables map each color channel separately through a table of
+ * 256 entries. Optionally, pure black can be given a result of its own
+ * (java.awt.Color.brighter() treats black like this).
+ *
+ * Luminance tables map the sum of the three channels (0 to 765) to a
+ * complete result pixel. They suit operations that first reduce a pixel
+ * to its brightness, like gray scale or threshold.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.0
+ */
+public class LookupTable
+{
+    // the number of entries in a channel table and in a luminance table
+    public static final int CHANNEL_SIZE = 256;
+    public static final int LUMINANCE_SIZE = 3 * 255 + 1;
+
+    // channel tables, already shifted into their position in a packed
+    // pixel (the red table also carries the opaque alpha bits)
+    private final int[] red;
+    private final int[] green;
+    private final int[] blue;
+    private final boolean hasBlack;
+    private final int black;
+
+    // luminance table of complete packed pixels, or null for channel tables
+    private final int[] luminance;
+
+    /**
+     * Create a lookup table. Use the static factory methods to create
+     * tables.
+     */
+    private LookupTable(int[] red, int[] green, int[] blue, boolean hasBlack, int black,
+                        int[] luminance)
+    {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.hasBlack = hasBlack;
+        this.black = black;
+        this.luminance = luminance;
+    }
+
+    /**
+     * Create a table that maps all three channels through the same table.
+     * @param table The new value (0-255) for each old channel value.
+     * @return The lookup table.
+     */
+    public static LookupTable perChannel(int[] table)
+    {
+        return perChannel(table, table, table);
+    }
+
+    /**
+     * Create a table that maps each channel through its own table.
+     * @param red The new red value (0-255) for each old red value.
+     * @param green The new green value (0-255) for each old green value.
+     * @param blue The new blue value (0-255) for each old blue value.
+     * @return The lookup table.
+     */
+    public static LookupTable perChannel(int[] red, int[] green, int[] blue)
+    {
+        return new LookupTable(shift(red, 16, 0xff000000), shift(green, 8, 0), shift(blue, 0, 0),
+                               false, 0, null);
+    }
+
+    /**
+     * Create a table that maps each channel through its own table, but
+     * maps pure black to a given pixel regardless of the tables.
+     * @param red The new red value (0-255) for each old red value.
+     * @param green The new green value (0-255) for each old green value.
+     * @param blue The new blue value (0-255) for each old blue value.
+     * @param black The packed pixel that pure black is changed into.
+     * @return The lookup table.
+     */
+    public static LookupTable perChannel(int[] red, int[] green, int[] blue, int black)
+    {
+        return new LookupTable(shift(red, 16, 0xff000000), shift(green, 8, 0), shift(blue, 0, 0),
+                               true, 0xff000000 | black, null);
+    }
+
+    /**
+     * Create a table indexed by the sum of the red, green and blue values
+     * of a pixel.
+     * @param table The packed result pixel for each sum (0 to 765).
+     * @return The lookup table.
+     */
+    public static LookupTable luminance(int[] table)
+    {
+        if(table.length != LUMINANCE_SIZE) {
+            throw new IllegalArgumentException("luminance table must have " +
+                                               LUMINANCE_SIZE + " entries");
+        }
+        int[] opaque = new int[LUMINANCE_SIZE];
+        for(int i = 0; i < LUMINANCE_SIZE; i++) {
+            opaque[i] = 0xff000000 | table[i];
+        }
+        return new LookupTable(null, null, null, false, 0, opaque);
+    }
+
+    /**
+     * Return the result of this table for a single pixel.
+     * @param pixel The packed pixel.
+     * @return The packed result pixel.
+     */
+    public int lookup(int pixel)
+    {
+        if(luminance != null) {
+            return luminance[((pixel >> 16) & 0xff) + ((pixel >> 8) & 0xff) + (pixel & 0xff)];
+        }
+        if(hasBlack && (pixel & 0xffffff) == 0) {
+            return black;
+        }
+        return red[(pixel >> 16) & 0xff] | green[(pixel >> 8) & 0xff] | blue[pixel & 0xff];
+    }
+
+    /**
+     * Apply this table to a range of packed pixels, in place.
+     * @param pixels The packed pixels.
+     * @param from The index of the first pixel to change.
+     * @param to The index after the last pixel to change.
+     */
+    public void apply(int[] pixels, int from, int to)
+    {
+        if(luminance != null) {
+            final int[] lum = luminance;
+            for(int i = from; i < to; i++) {
+                int p = pixels[i];
+                pixels[i] = lum[((p >> 16) & 0xff) + ((p >> 8) & 0xff) + (p & 0xff)];
+            }
+        }
+        else if(hasBlack) {
+            final int[] r = red, g = green, b = blue;
+            for(int i = from; i < to; i++) {
+                int p = pixels[i];
+                pixels[i] = (p & 0xffffff) == 0 ? black
+                            : r[(p >> 16) & 0xff] | g[(p >> 8) & 0xff] | b[p & 0xff];
+            }
+        }
+        else {
+            final int[] r = red, g = green, b = blue;
+            for(int i = from; i < to; i++) {
+                int p = pixels[i];
+                pixels[i] = r[(p >> 16) & 0xff] | g[(p >> 8) & 0xff] | b[p & 0xff];
+            }
+        }
+    }
+
+    /**
+     * Combine this table with a table that is applied after it. The
+     * result has the same effect as applying this table and then the
+     * other one, but needs only one lookup per pixel.
+     *
+     * Not every pair of tables can be combined: a luminance table that
+     * follows a channel table depends on all three channels at once. In
+     * that case this method returns null.
+     *
+     * @param next The table that is applied after this one.
+     * @return The combined table, or null if the tables cannot be combined.
+     */
+    public LookupTable then(LookupTable next)
+    {
+        if(luminance != null) {
+            // every result of this table is a complete pixel: pass each
+            // of them through the next table
+            int[] table = new int[LUMINANCE_SIZE];
+            for(int i = 0; i < LUMINANCE_SIZE; i++) {
+                table[i] = next.lookup(luminance[i]);
+            }
+            return new LookupTable(null, null, null, false, 0, table);
+        }
+        if(next.luminance != null || (next.hasBlack && mapsColorToBlack())) {
+            return null;
+        }
+        int[] r = new int[CHANNEL_SIZE];
+        int[] g = new int[CHANNEL_SIZE];
+        int[] b = new int[CHANNEL_SIZE];
+        for(int i = 0; i < CHANNEL_SIZE; i++) {
+            r[i] = next.red[(red[i] >> 16) & 0xff];
+            g[i] = next.green[(green[i] >> 8) & 0xff];
+            b[i] = next.blue[blue[i] & 0xff];
+        }
+        if(hasBlack || next.hasBlack) {
+            return new LookupTable(r, g, b, true, next.lookup(lookup(0)), null);
+        }
+        return new LookupTable(r, g, b, false, 0, null);
+    }
+
+    /**
+     * Check whether this channel table turns some pixel other than black
+     * into black. Only then does a special result for black in a following
+     * table prevent combining the two tables.
+     */
+    private boolean mapsColorToBlack()
+    {
+        boolean redZero = false, greenZero = false, blueZero = false;
+        boolean fromColor = false;
+        for(int i = 0; i < CHANNEL_SIZE; i++) {
+            boolean r = (red[i] & 0xff0000) == 0;
+            boolean g = (green[i] & 0xff00) == 0;
+            boolean b = (blue[i] & 0xff) == 0;
+            redZero |= r;
+            greenZero |= g;
+            blueZero |= b;
+            if(i > 0 && (r || g || b)) {
+                fromColor = true;
+            }
+        }
+        return redZero && greenZero && blueZero && fromColor;
+    }
+
+    /**
+     * Copy a channel table, shifting every entry into its position in a
+     * packed pixel.
+     */
+    private static int[] shift(int[] table, int shift, int extraBits)
+    {
+        if(table.length != CHANNEL_SIZE) {
+            throw new IllegalArgumentException("channel table must have " +
+                                               CHANNEL_SIZE + " entries");
+        }
+        int[] shifted = new int[CHANNEL_SIZE];
+        for(int i = 0; i < CHANNEL_SIZE; i++) {
+            shifted[i] = extraBits | (OFImage.clamp(table[i]) << shift);
+        }
+        return shifted;
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A MappedRaster is an array of packed pixels kept in a file on disk
+ * instead of on the Java heap. The file is memory-mapped, so the pixels
+ * are written and read back as they are, without any encoding; the
+ * operating system decides which parts stay in memory.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.2
+ */
+public class MappedRaster
+{
+    private final Path file;
+    private final int length;
+    private IntBuffer buffer;
+
+    /**
+     * Write an array of pixels to a new file in a directory.
+     * @param directory The directory to create the file in.
+     * @param pixels The pixels to write.
+     * @throws IOException If the file cannot be created or written.
+     * @throws IllegalArgumentException If the pixels take more than 2 GB.
+     * @throws InternalError If the disk fills up while the pixels are
+     *         written into the mapped file.
+     */
+    public MappedRaster(Path directory, int[] pixels) throws IOException
+    {
+        file = Files.createTempFile(directory, "raster", ".raw");
+        // in case the program ends without deleting it
+        file.toFile().deleteOnExit();
+        length = pixels.length;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                                                   StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, 4L * length);
+            buffer = mapped.order(ByteOrder.nativeOrder()).asIntBuffer();
+            buffer.put(pixels);
+        }
+        catch(IOException | RuntimeException | InternalError e) {
+            try {
+                Files.deleteIfExists(file);
+            }
+            catch(IOException ignored) {
+                // deleted on exit instead
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return The number of pixels in this raster.
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * @return The size of the file, in bytes.
+     */
+    public long getSize()
+    {
+        return 4L * length;
+    }
+
+    /**
+     * Read all pixels of this raster.
+     * @return A new array with the pixels.
+     */
+    public int[] read()
+    {
+        int[] pixels = new int[length];
+        buffer.get(0, pixels);
+        return pixels;
+    }
+
+    /**
+     * Delete the file of this raster. The raster cannot be read afterwards.
+     * The mapped memory itself is released by the garbage collector; where
+     * the system does not allow deleting a file that is still mapped, the
+     * file is deleted when the program ends (as every raster file is that
+     * is still there then).
+     */
+    public void delete()
+    {
+        buffer = null;
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch(IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import java.util.Arrays;
+
+/**
+ * MinMaxKernel computes, for every pixel, the largest or smallest value
+ * of each color channel in a square window around it. This is the core
+ * of edge detection and of the morphology filters (dilate and erode).
+ *
+ * The window is handled separably (first along rows, then down columns)
+ * with the van Herk/Gil-Werman algorithm: the line is cut into blocks of
+ * the window size, running maxima are taken forwards and backwards
+ * inside each block, and every window is then covered by one backward
+ * and one forward value. This costs three comparisons per pixel and
+ * direction, whatever the window size.
+ *
+ * All values are packed pixels; the three channels are compared
+ * separately. Windows are clipped at the image border. Minima are found
+ * as the maxima of the inverted values, so only one kernel is needed.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.2
+ */
+public class MinMaxKernel
+{
+    // columns handled together in the vertical pass, to keep the
+    // working set small
+    private static final int STRIP_WIDTH = 64;
+
+    // the bits holding the three channels of a packed pixel
+    private static final int RGB = 0xffffff;
+
+    /**
+     * Compute the channel-wise maximum or minimum over the window around
+     * each pixel of a band of rows.
+     *
+     * @param source  The packed source pixels, starting at image row sourceY;
+     *                must contain the band plus radius rows on either side
+     *                (as far as they lie inside the image).
+     * @param sourceY The image row of the first row in source.
+     * @param width   The width of the image.
+     * @param height  The height of the image.
+     * @param fromY   The first row to compute.
+     * @param toY     The row after the last row to compute.
+     * @param radius  The window radius; the window is 2 * radius + 1 wide and high.
+     * @param max     true for the maximum, false for the minimum.
+     * @return The results for rows fromY to toY, row by row (channel
+     *         values only; the alpha bits are 0).
+     */
+    public static int[] filter(int[] source, int sourceY, int width, int height,
+                               int fromY, int toY, int radius, boolean max)
+    {
+        // inverting every value turns the minimum into the maximum
+        int flip = max ? 0 : RGB;
+        // only the rows the windows of this band reach, which may be fewer
+        // than the source holds
+        int firstY = Math.max(0, fromY - radius);
+        int endY = Math.min(height, toY + radius);
+        int[] horizontal = new int[(endY - firstY) * width];
+        int[] line = new int[padded(width, radius)];
+        int[] forward = new int[line.length];
+        int[] backward = new int[line.length];
+        for(int y = firstY; y < endY; y++) {
+            horizontal(source, (y - sourceY) * width, horizontal, (y - firstY) * width,
+                       width, radius, flip, line, forward, backward);
+        }
+
+        int[] result = new int[(toY - fromY) * width];
+        vertical(horizontal, firstY, width, height, fromY, toY, radius, result);
+        if(flip != 0) {
+            for(int i = 0; i < result.length; i++) {
+                result[i] ^= flip;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compute the windowed maximum along one row, of the values xor flip.
+     */
+    private static void horizontal(int[] source, int sourceOffset, int[] target, int targetOffset,
+                                   int width, int radius, int flip,
+                                   int[] line, int[] forward, int[] backward)
+    {
+        int window = 2 * radius + 1;
+        int length = line.length;
+
+        // the row, with radius neutral (zero) values on either side
+        Arrays.fill(line, 0, radius, 0);
+        for(int x = 0; x < width; x++) {
+            line[radius + x] = (source[sourceOffset + x] & RGB) ^ flip;
+        }
+        Arrays.fill(line, radius + width, length, 0);
+
+        // running maxima forwards and backwards inside each block
+        for(int start = 0; start < length; start += window) {
+            int end = start + window;
+            int run = line[start];
+            forward[start] = run;
+            for(int i = start + 1; i < end; i++) {
+                run = maxRGB(run, line[i]);
+                forward[i] = run;
+            }
+            run = line[end - 1];
+            backward[end - 1] = run;
+            for(int i = end - 2; i >= start; i--) {
+                run = maxRGB(run, line[i]);
+                backward[i] = run;
+            }
+        }
+        for(int x = 0; x < width; x++) {
+            target[targetOffset + x] = maxRGB(backward[x], forward[x + 2 * radius]);
+        }
+    }
+
+    /**
+     * Compute the windowed maximum down the columns, for the rows fromY
+     * to toY, a strip of columns at a time.
+     */
+    private static void vertical(int[] horizontal, int firstY, int width, int height,
+                                 int fromY, int toY, int radius, int[] result)
+    {
+        int window = 2 * radius + 1;
+        // lines start at image row fromY - radius, so that the blocks never
+        // need rows outside the band and its halo
+        int length = padded(toY - fromY, radius);
+        // rows past this one only fill up the last block; they never
+        // reach a result, and may lie outside the source rows
+        int end = Math.min(height, toY + radius);
+        int[] forward = new int[length * STRIP_WIDTH];
+        int[] backward = new int[length * STRIP_WIDTH];
+
+        for(int x0 = 0; x0 < width; x0 += STRIP_WIDTH) {
+            int strip = Math.min(STRIP_WIDTH, width - x0);
+
+            for(int start = 0; start < length; start += window) {
+                // forward runs, row by row
+                for(int i = start; i < start + window; i++) {
+                    int y = fromY - radius + i;
+                    int at = i * strip;
+                    if(y < 0 || y >= end) {
+                        if(i == start) {
+                            Arrays.fill(forward, at, at + strip, 0);
+                        }
+                        else {
+                            System.arraycopy(forward, at - strip, forward, at, strip);
+                        }
+                        continue;
+                    }
+                    int from = (y - firstY) * width + x0;
+                    if(i == start) {
+                        System.arraycopy(horizontal, from, forward, at, strip);
+                    }
+                    else {
+                        for(int x = 0; x < strip; x++) {
+                            forward[at + x] = maxRGB(forward[at - strip + x], horizontal[from + x]);
+                        }
+                    }
+                }
+                // backward runs, row by row from the bottom of the block
+                for(int i = start + window - 1; i >= start; i--) {
+                    int y = fromY - radius + i;
+                    int at = i * strip;
+                    boolean last = i == start + window - 1;
+                    if(y < 0 || y >= end) {
+                        if(last) {
+                            Arrays.fill(backward, at, at + strip, 0);
+                        }
+                        else {
+                            System.arraycopy(backward, at + strip, backward, at, strip);
+                        }
+                        continue;
+                    }
+                    int from = (y - firstY) * width + x0;
+                    if(last) {
+                        System.arraycopy(horizontal, from, backward, at, strip);
+                    }
+                    else {
+                        for(int x = 0; x < strip; x++) {
+                            backward[at + x] = maxRGB(backward[at + strip + x], horizontal[from + x]);
+                        }
+                    }
+                }
+            }
+            // each window [i, i + 2 * radius] is one backward and one forward run
+            for(int y = fromY; y < toY; y++) {
+                int i = y - fromY;
+                int back = i * strip;
+                int fwd = (i + 2 * radius) * strip;
+                int out = i * width + x0;
+                for(int x = 0; x < strip; x++) {
+                    result[out + x] = maxRGB(backward[back + x], forward[fwd + x]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the length of a line of n values with radius neutral values
+     * on either side, rounded up to whole blocks.
+     */
+    private static int padded(int n, int radius)
+    {
+        int window = 2 * radius + 1;
+        int length = n + 2 * radius;
+        return (length + window - 1) / window * window;
+    }
+
+    /**
+     * @param a A packed pixel.
+     * @param b Another packed pixel.
+     * @return The channel-wise maximum of the two pixels.
+     */
+    public static int maxRGB(int a, int b)
+    {
+        return Math.max(a & 0xff0000, b & 0xff0000)
+             | Math.max(a & 0xff00, b & 0xff00)
+             | Math.max(a & 0xff, b & 0xff);
+    }
+}
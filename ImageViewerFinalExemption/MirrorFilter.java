@@ -1,5 +1,3 @@
-import java.awt.Color;
-
 /**
  * An image filter to mirror (flip) the image horizontally.
  * 
@@ -18,19 +16,26 @@ public class MirrorFilter extends Filter
 	}
 
     /**
-     * Apply this filter to an image.
+     * Filter a band of rows of an image.
      * 
-     * @param  image  The image to be changed by this filter.
+     * @param  source   The packed pixels to read from.
+     * @param  sourceY  The image row of the first row in source.
+     * @param  target   The packed pixels of the image, to be changed.
+     * @param  width    The width of the image.
+     * @param  height   The height of the image.
+     * @param  fromY    The first row to change.
+     * @param  toY      The row after the last row to change.
      */
-    public void apply(OFImage image)
+    protected void filterRows(int[] source, int sourceY, int[] target,
+                              int width, int height, int fromY, int toY)
     {
-        int height = image.getHeight();
-        int width = image.getWidth();
-        for(int y = 0; y < height; y++) {
-            for(int x = 0; x < width / 2; x++) {
-                Color left = image.getPixel(x, y);
-                image.setPixel(x, y, image.getPixel(width - 1 - x, y));
-                image.setPixel(width - 1 - x, y, left);
+        for(int y = fromY; y < toY; y++) {
+            int left = y * width;
+            int right = left + width - 1;
+            while(left < right) {
+                int pix = target[left];
+                target[left++] = target[right];
+                target[right--] = pix;
             }
         }
     }
@@ -0,0 +1,97 @@
+/**
+ * An image filter that grows the bright or the dark areas of an image
+ * (dilation or erosion): each channel of a pixel becomes the largest
+ * (dilation) or smallest (erosion) value of that channel in a square
+ * window around it.
+ * 
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.0
+ */
+public class MorphologyFilter extends Filter
+{
+    /**
+     * The areas a morphology filter grows.
+     */
+    public enum Mode
+    {
+        // the bright areas: each channel takes the largest value
+        DILATE,
+        // the dark areas: each channel takes the smallest value
+        ERODE
+    }
+
+    private final Mode mode;
+    private final int radius;
+
+    /**
+     * Constructor for objects of class MorphologyFilter, using a 3x3
+     * window.
+     * @param name The name of the filter.
+     * @param mode Whether to dilate or erode.
+     */
+    public MorphologyFilter(String name, Mode mode)
+    {
+        this(name, mode, 1);
+    }
+
+    /**
+     * Constructor for objects of class MorphologyFilter with a given
+     * window.
+     * @param name The name of the filter.
+     * @param mode Whether to dilate or erode.
+     * @param radius The window radius; the window is 2 * radius + 1 pixels wide.
+     */
+    public MorphologyFilter(String name, Mode mode, int radius)
+    {
+        super(name);
+        if(radius < 1) {
+            throw new IllegalArgumentException("radius must be at least 1");
+        }
+        this.mode = mode;
+        this.radius = radius;
+    }
+
+    /**
+     * Return whether this filter dilates or erodes.
+     * 
+     * @return The mode of this filter.
+     */
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * The window reaches up to radius rows above and below each pixel.
+     * 
+     * @param  width   The width of the image.
+     * @param  height  The height of the image.
+     * @return The number of extra rows needed on either side of a band.
+     */
+    public int getHalo(int width, int height)
+    {
+        return radius;
+    }
+
+    /**
+     * Filter a band of rows of an image.
+     * 
+     * @param  source   The packed pixels to read from.
+     * @param  sourceY  The image row of the first row in source.
+     * @param  target   The packed pixels of the image, to be changed.
+     * @param  width    The width of the image.
+     * @param  height   The height of the image.
+     * @param  fromY    The first row to change.
+     * @param  toY      The row after the last row to change.
+     */
+    protected void filterRows(int[] source, int sourceY, int[] target,
+                              int width, int height, int fromY, int toY)
+    {
+        int[] result = MinMaxKernel.filter(source, sourceY, width, height, fromY, toY, radius,
+                                           mode == Mode.DILATE);
+        int offset = fromY * width;
+        for(int i = 0; i < result.length; i++) {
+            target[offset + i] = 0xff000000 | result[i];
+        }
+    }
+}
@@ -1,24 +1,55 @@
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 /**
  * OFImage is a class that defines an image in OF (Objects First) format.
- * 
+ *
+ * Every OFImage is stored as packed 32-bit pixels (one int per pixel,
+ * 8 bits each for alpha, red, green and blue) in a single int array, row
+ * by row. Besides the simple getPixel/setPixel methods, OFImage offers
+ * direct access to this array and a set of static helpers to unpack and
+ * pack channel values, so that filters can process large images without
+ * creating a Color object for every pixel.
+ *
+ * An image can be saved in snapshots (see TiledRaster) that share all
+ * tiles that did not change between them. For this, the image remembers
+ * the snapshot it last matched and which tiles setPixel and setRow have
+ * written since. Anything else that may write the pixels (getPixelData,
+ * setPixels, setRGB, createGraphics) makes the image forget the snapshot,
+ * so the next snapshot compares all tiles. Code that only reads the array,
+ * or reports what it writes with markChanged (as FilterExecutor does),
+ * gets it from getTrackedPixelData instead.
+ *
  * @author Michael Kölling and David J. Barnes.
- * @version 2.0
+ * @version 2.4
  */
 public class OFImage extends BufferedImage
 {
-	
+    // The packed pixel data backing this image, row by row.
+    private final int[] data;
+    // the snapshot this image matched, or null if not known, and the
+    // tiles that may have been written since (null until the first one)
+    private TiledRaster snapshot;
+    private boolean[] changedTiles;
+
     /**
      * Create an OFImage copied from a BufferedImage.
      * @param image The image to copy.
      */
     public OFImage(BufferedImage image)
     {
-         super(image.getColorModel(), image.copyData(null), 
-               image.isAlphaPremultiplied(), null);
-         
+        super(image.getWidth(), image.getHeight(),
+              image.getColorModel().hasAlpha() ? TYPE_INT_ARGB : TYPE_INT_RGB);
+        data = ((DataBufferInt) getRaster().getDataBuffer()).getData();
+        if(image instanceof OFImage) {
+            System.arraycopy(((OFImage) image).data, 0, data, 0, data.length);
+        }
+        else {
+            image.getRGB(0, 0, getWidth(), getHeight(), data, 0, getWidth());
+        }
     }
 
     /**
@@ -28,7 +59,20 @@ public class OFImage extends BufferedImage
      */
     public OFImage(int width, int height)
     {
-        super(width, height, TYPE_INT_RGB);
+        this(width, height, false);
+    }
+
+    /**
+     * Create an OFImage with specified size and unspecified content,
+     * with or without an alpha channel.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param alpha true if the image should have an alpha channel.
+     */
+    public OFImage(int width, int height, boolean alpha)
+    {
+        super(width, height, alpha ? TYPE_INT_ARGB : TYPE_INT_RGB);
+        data = ((DataBufferInt) getRaster().getDataBuffer()).getData();
     }
 
     /**
@@ -40,10 +84,12 @@ public class OFImage extends BufferedImage
      */
     public void setPixel(int x, int y, Color col)
     {
-        int pixel = col.getRGB();
-        setRGB(x, y, pixel);
+        data[y * getWidth() + x] = col.getRGB();
+        if(snapshot != null) {
+            markTile(x >> TiledRaster.TILE_SHIFT, y >> TiledRaster.TILE_SHIFT);
+        }
     }
-    
+
     /**
      * Get the color value at a specified pixel position.
      * @param x The x position of the pixel.
@@ -52,8 +98,233 @@ public class OFImage extends BufferedImage
      */
     public Color getPixel(int x, int y)
     {
-        int pixel = getRGB(x, y);
-        return new Color(pixel);
+        return new Color(data[y * getWidth() + x]);
+    }
+
+    /**
+     * Return the packed pixel data of this image. The array holds one
+     * int per pixel, row by row (the pixel (x, y) is at index
+     * y * width + x). The array is the image's own storage, not a copy:
+     * changes to it change the image. Since the caller may change any
+     * pixel, the image forgets its snapshot.
+     *
+     * @return The packed pixel data of this image.
+     */
+    public int[] getPixelData()
+    {
+        snapshot = null;
+        return data;
+    }
+
+    /**
+     * Return the packed pixel data of this image (see getPixelData),
+     * without making the image forget its snapshot. The caller must
+     * report every pixel it writes with markChanged.
+     *
+     * @return The packed pixel data of this image.
+     */
+    public int[] getTrackedPixelData()
+    {
+        return data;
+    }
+
+    /**
+     * Copy one row of this image into an array.
+     * @param y The row to copy.
+     * @param row The array to copy into; must hold at least width values.
+     */
+    public void getRow(int y, int[] row)
+    {
+        System.arraycopy(data, y * getWidth(), row, 0, getWidth());
+    }
+
+    /**
+     * Replace one row of this image with the values in an array.
+     * @param y The row to replace.
+     * @param row The packed pixels to write; must hold at least width values.
+     */
+    public void setRow(int y, int[] row)
+    {
+        System.arraycopy(row, 0, data, y * getWidth(), getWidth());
+        markChanged(0, y, getWidth(), 1);
+    }
+
+    /**
+     * Copy all pixels of this image into an array, row by row.
+     * @param pixels The array to copy into; must hold width * height values.
+     */
+    public void getPixels(int[] pixels)
+    {
+        System.arraycopy(data, 0, pixels, 0, data.length);
+    }
+
+    /**
+     * Replace all pixels of this image with the values in an array.
+     * @param pixels The packed pixels to write, row by row.
+     */
+    public void setPixels(int[] pixels)
+    {
+        System.arraycopy(pixels, 0, data, 0, data.length);
+        snapshot = null;
+    }
+
+    /**
+     * Set a pixel to a packed ARGB value. Overridden to make the image
+     * forget its snapshot.
+     */
+    @Override
+    public void setRGB(int x, int y, int rgb)
+    {
+        super.setRGB(x, y, rgb);
+        snapshot = null;
+    }
+
+    /**
+     * Set a rectangle of pixels to packed ARGB values. Overridden to make
+     * the image forget its snapshot.
+     */
+    @Override
+    public void setRGB(int startX, int startY, int w, int h, int[] rgbArray, int offset,
+                       int scansize)
+    {
+        super.setRGB(startX, startY, w, h, rgbArray, offset, scansize);
+        snapshot = null;
+    }
+
+    /**
+     * Create a Graphics2D for drawing into this image. Overridden to make
+     * the image forget its snapshot.
+     */
+    @Override
+    public Graphics2D createGraphics()
+    {
+        snapshot = null;
+        return super.createGraphics();
+    }
+
+    // ---- snapshots ----
+
+    /**
+     * Record that a rectangle of pixels was written through the array
+     * returned by getPixelData, so that the image keeps its snapshot.
+     * @param x The left edge of the rectangle.
+     * @param y The top edge of the rectangle.
+     * @param width The width of the rectangle.
+     * @param height The height of the rectangle.
+     */
+    public void markChanged(int x, int y, int width, int height)
+    {
+        if(snapshot == null || width <= 0 || height <= 0) {
+            return;
+        }
+        int lastX = (x + width - 1) >> TiledRaster.TILE_SHIFT;
+        int lastY = (y + height - 1) >> TiledRaster.TILE_SHIFT;
+        for(int ty = y >> TiledRaster.TILE_SHIFT; ty <= lastY; ty++) {
+            for(int tx = x >> TiledRaster.TILE_SHIFT; tx <= lastX; tx++) {
+                markTile(tx, ty);
+            }
+        }
+    }
+
+    /**
+     * Record that a tile was written.
+     */
+    private void markTile(int tx, int ty)
+    {
+        int tilesX = TiledRaster.tileCount(getWidth());
+        if(changedTiles == null) {
+            changedTiles = new boolean[tilesX * TiledRaster.tileCount(getHeight())];
+        }
+        changedTiles[ty * tilesX + tx] = true;
+    }
+
+    /**
+     * @return The snapshot this image matched when it was taken or
+     *         restored, if no pixel was written since other than through
+     *         setPixel, setRow or markChanged; null otherwise.
+     */
+    public TiledRaster getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * @param t The number of a tile (see TiledRaster).
+     * @return true if the tile may have been written since the image
+     *         matched its snapshot.
+     */
+    public boolean isTileChanged(int t)
+    {
+        return changedTiles != null && changedTiles[t];
+    }
+
+    /**
+     * Record that this image matches a snapshot, with no tile changed.
+     * @param snapshot The snapshot the image now matches.
+     */
+    public void setSnapshot(TiledRaster snapshot)
+    {
+        this.snapshot = snapshot;
+        if(changedTiles != null) {
+            Arrays.fill(changedTiles, false);
+        }
+    }
+
+    // ---- helpers for packed pixel values ----
+
+    /**
+     * @param pixel A packed pixel value.
+     * @return The red component (0-255) of the pixel.
+     */
+    public static int red(int pixel)
+    {
+        return (pixel >> 16) & 0xff;
+    }
+
+    /**
+     * @param pixel A packed pixel value.
+     * @return The green component (0-255) of the pixel.
+     */
+    public static int green(int pixel)
+    {
+        return (pixel >> 8) & 0xff;
+    }
+
+    /**
+     * @param pixel A packed pixel value.
+     * @return The blue component (0-255) of the pixel.
+     */
+    public static int blue(int pixel)
+    {
+        return pixel & 0xff;
+    }
+
+    /**
+     * Pack three color components into an opaque pixel value. The
+     * components must already be in the range 0-255.
+     * @param red The red component.
+     * @param green The green component.
+     * @param blue The blue component.
+     * @return The packed pixel value.
+     */
+    public static int rgb(int red, int green, int blue)
+    {
+        return 0xff000000 | (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * Limit a value to the range of a color component.
+     * @param value The value to limit.
+     * @return The value, or 0 or 255 if it lies outside 0-255.
+     */
+    public static int clamp(int value)
+    {
+        if(value < 0) {
+            return 0;
+        }
+        if(value > 255) {
+            return 255;
+        }
+        return value;
     }
-    
 }
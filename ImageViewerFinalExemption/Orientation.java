@@ -0,0 +1,200 @@
+import java.awt.geom.AffineTransform;
+
+/**
+ * An Orientation is one of the eight ways an image can be turned by
+ * quarter turns and mirrored. It lets rotating and mirroring be recorded
+ * instead of carried out: the pixels are kept as they are, and the image
+ * is shown turned (see ImagePanel). Further turns are combined with the
+ * orientation, and the pixels are only moved once, when something needs
+ * them in their new places.
+ *
+ * Every orientation is a mirror (or none), followed by a number of
+ * quarter turns clockwise.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.2
+ */
+public enum Orientation
+{
+    NORMAL(0, false),
+    ROTATE_90(1, false),
+    ROTATE_180(2, false),
+    ROTATE_270(3, false),
+    MIRROR(0, true),
+    MIRROR_ROTATE_90(1, true),
+    MIRROR_ROTATE_180(2, true),
+    MIRROR_ROTATE_270(3, true);
+
+    // the number of quarter turns clockwise, after mirroring
+    private final int turns;
+    // true if the image is mirrored left to right, before turning
+    private final boolean mirrored;
+
+    private Orientation(int turns, boolean mirrored)
+    {
+        this.turns = turns;
+        this.mirrored = mirrored;
+    }
+
+    /**
+     * Return the orientation for a mirror and a number of turns.
+     *
+     * @param  turns     The number of quarter turns clockwise (any
+     *                   number, also negative).
+     * @param  mirrored  true if the image is mirrored before turning.
+     * @return The orientation.
+     */
+    public static Orientation of(int turns, boolean mirrored)
+    {
+        return values()[(mirrored ? 4 : 0) + (turns & 3)];
+    }
+
+    /**
+     * Return the orientation that has the effect of this one followed by
+     * another one.
+     *
+     * @param  next  The orientation to apply after this one.
+     * @return The combined orientation.
+     */
+    public Orientation then(Orientation next)
+    {
+        // a mirror reverses the direction of the turns made before it
+        return of(next.turns + (next.mirrored ? -turns : turns), mirrored != next.mirrored);
+    }
+
+    /**
+     * @return The orientation that undoes this one.
+     */
+    public Orientation inverse()
+    {
+        return mirrored ? this : of(-turns, false);
+    }
+
+    /**
+     * @return The number of quarter turns clockwise, after mirroring.
+     */
+    public int getTurns()
+    {
+        return turns;
+    }
+
+    /**
+     * @return true if the image is mirrored left to right before turning.
+     */
+    public boolean isMirrored()
+    {
+        return mirrored;
+    }
+
+    /**
+     * @return true if this orientation swaps the width and height of an
+     *         image.
+     */
+    public boolean isTransposed()
+    {
+        return (turns & 1) != 0;
+    }
+
+    /**
+     * @param  width   The width of an image.
+     * @param  height  The height of the image.
+     * @return The width of the image in this orientation.
+     */
+    public int getWidth(int width, int height)
+    {
+        return isTransposed() ? height : width;
+    }
+
+    /**
+     * @param  width   The width of an image.
+     * @param  height  The height of the image.
+     * @return The height of the image in this orientation.
+     */
+    public int getHeight(int width, int height)
+    {
+        return isTransposed() ? width : height;
+    }
+
+    /**
+     * Return the transform that draws an image in this orientation, with
+     * its top left corner at (0, 0).
+     *
+     * @param  width   The width of the image.
+     * @param  height  The height of the image.
+     * @return The transform from image to drawing coordinates.
+     */
+    public AffineTransform getTransform(int width, int height)
+    {
+        AffineTransform transform = new AffineTransform();
+        if(mirrored) {
+            transform.preConcatenate(new AffineTransform(-1, 0, 0, 1, width, 0));
+        }
+        for(int i = 0; i < turns; i++) {
+            // (x, y) becomes (height - y, x)
+            transform.preConcatenate(new AffineTransform(0, 1, -1, 0, height, 0));
+            int swap = width;
+            width = height;
+            height = swap;
+        }
+        return transform;
+    }
+
+    /**
+     * Return an image with the pixels of an image moved to their places
+     * in this orientation, using the default executor.
+     *
+     * @param  image  The image.
+     * @return A new image, or the image itself for the NORMAL orientation.
+     */
+    public OFImage apply(OFImage image)
+    {
+        return apply(image, FilterExecutor.getDefault());
+    }
+
+    /**
+     * Return an image with the pixels of an image moved to their places
+     * in this orientation (see RotationKernel).
+     *
+     * @param  image     The image.
+     * @param  executor  The executor that fills the new image.
+     * @return A new image, or the image itself for the NORMAL orientation.
+     */
+    public OFImage apply(OFImage image, FilterExecutor executor)
+    {
+        if(this == NORMAL) {
+            return image;
+        }
+        int width = getWidth(image.getWidth(), image.getHeight());
+        int height = getHeight(image.getWidth(), image.getHeight());
+        OFImage result = new OFImage(width, height, image.getColorModel().hasAlpha());
+        // every new pixel is read from where the inverse orientation takes it
+        Orientation back = inverse();
+        int start = back.targetIndex(0, 0, width, height);
+        int stepX = back.targetIndex(1, 0, width, height) - start;
+        int stepY = back.targetIndex(0, 1, width, height) - start;
+        // the source is only read, so it keeps its snapshot
+        new RotationKernel(image.getTrackedPixelData(), start, stepX, stepY).apply(result, executor);
+        return result;
+    }
+
+    /**
+     * Return the index in the oriented image of the pixel at (x, y) in
+     * an image of a given size. Also used for positions just outside the
+     * image, to find the steps between neighboring pixels.
+     */
+    private int targetIndex(int x, int y, int width, int height)
+    {
+        if(mirrored) {
+            x = width - 1 - x;
+        }
+        for(int i = 0; i < turns; i++) {
+            int swap = x;
+            x = height - 1 - y;
+            y = swap;
+            swap = width;
+            width = height;
+            height = swap;
+        }
+        return y * width + x;
+    }
+}
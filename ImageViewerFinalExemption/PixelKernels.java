@@ -0,0 +1,171 @@
+/**
+ * PixelKernels holds the per-pixel loops of the simple point filters in
+ * a form that the JIT compiler can turn into SIMD instructions, so that
+ * many pixels are processed per instruction.
+ *
+ * Every kernel is a counted loop over an int array whose body is pure
+ * int arithmetic, with no table lookups and no branches: channels are
+ * handled side by side inside the packed pixel where possible, and
+ * choices are made with masks. Loops are kept short, because the JIT
+ * only vectorizes loops whose body is small enough to unroll; the color
+ * matrix is therefore computed one channel at a time over small blocks.
+ * On processors without SIMD support the same loops simply run one
+ * pixel at a time.
+ *
+ * The filters use these kernels by default and fall back to their
+ * lookup tables (or plain per-pixel code) when the system property
+ * "imageviewer.vectorize" is set to false (or setEnabled is called).
+ * Both paths give exactly the same result; PixelKernelsTest checks this.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.2
+ */
+public class PixelKernels
+{
+    // true if the filters should use these kernels
+    private static volatile boolean enabled =
+        !"false".equalsIgnoreCase(System.getProperty("imageviewer.vectorize"));
+
+    // the alpha bits of an opaque pixel
+    private static final int OPAQUE = 0xff000000;
+    // the number of pixels the color matrix handles at a time
+    private static final int BLOCK_SIZE = 1024;
+
+    // the block copy and the three channel results of the color matrix,
+    // one set per thread, so that no call allocates
+    private static final ThreadLocal<int[][]> SCRATCH =
+        ThreadLocal.withInitial(() -> new int[4][BLOCK_SIZE]);
+
+    // the lowest and highest bit of each of the three channels
+    private static final int LOW_BITS = 0x010101;
+    private static final int HIGH_BITS = 0x808080;
+
+    /**
+     * @return true if the filters use these kernels, false if they use
+     *         their lookup tables or plain per-pixel code.
+     */
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Choose whether the filters use these kernels, overriding the system
+     * property (for example to compare both paths).
+     *
+     * @param  enabled  true to use the kernels.
+     */
+    public static void setEnabled(boolean enabled)
+    {
+        PixelKernels.enabled = enabled;
+    }
+
+    /**
+     * Invert every channel of a range of packed pixels, in place.
+     *
+     * @param  pixels  The packed pixels.
+     * @param  from    The index of the first pixel to change.
+     * @param  to      The index after the last pixel to change.
+     */
+    public static void invert(int[] pixels, int from, int to)
+    {
+        for(int i = from; i < to; i++) {
+            pixels[i] = ~pixels[i] | OPAQUE;
+        }
+    }
+
+    /**
+     * Invert every channel value below 128 of a range of packed pixels,
+     * in place; values of 128 and above are left unchanged.
+     *
+     * @param  pixels  The packed pixels.
+     * @param  from    The index of the first pixel to change.
+     * @param  to      The index after the last pixel to change.
+     */
+    public static void solarize(int[] pixels, int from, int to)
+    {
+        for(int i = from; i < to; i++) {
+            int pix = pixels[i];
+            // 0xff in each channel whose top bit is clear (255 - v == v ^ 0xff)
+            int mask = ((~pix & HIGH_BITS) >>> 7) * 0xff;
+            pixels[i] = (pix ^ mask) | OPAQUE;
+        }
+    }
+
+    /**
+     * Replace every pixel of a range of packed pixels by black, gray or
+     * white, depending on its brightness (the average of its channels):
+     * up to 85 is black, up to 170 is gray, above that is white.
+     *
+     * @param  pixels  The packed pixels.
+     * @param  from    The index of the first pixel to change.
+     * @param  to      The index after the last pixel to change.
+     */
+    public static void threshold(int[] pixels, int from, int to)
+    {
+        for(int i = from; i < to; i++) {
+            int pix = pixels[i];
+            int sum = ((pix >> 16) & 0xff) + ((pix >> 8) & 0xff) + (pix & 0xff);
+            // sum / 3 <= 85 means sum <= 257, and sum / 3 <= 170 means sum <= 512
+            int level = ((257 - sum) >>> 31) + ((512 - sum) >>> 31);
+            // 0, 128 or 255
+            int value = (level << 7) - (level >> 1);
+            pixels[i] = value * LOW_BITS | OPAQUE;
+        }
+    }
+
+    /**
+     * Multiply the channels of a range of packed pixels by a fixed-point
+     * color matrix, in place. The results are rounded down and limited to
+     * 0-255. All sums must fit into an int.
+     *
+     * @param  pixels   The packed pixels.
+     * @param  from     The index of the first pixel to change.
+     * @param  to       The index after the last pixel to change.
+     * @param  weights  The matrix, row by row: 3 weights and an offset
+     *                  (already including any rounding bias).
+     * @param  shift    The number of fraction bits of the weights.
+     */
+    public static void colorMatrix(int[] pixels, int from, int to, int[] weights, int shift)
+    {
+        // work on copies that start at index 0, which the JIT vectorizes best
+        int[][] scratch = SCRATCH.get();
+        int[] block = scratch[0];
+        int[] red = scratch[1];
+        int[] green = scratch[2];
+        int[] blue = scratch[3];
+        for(int start = from; start < to; start += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, to - start);
+            System.arraycopy(pixels, start, block, 0, length);
+            channel(block, length, red, weights, 0, shift);
+            channel(block, length, green, weights, 4, shift);
+            channel(block, length, blue, weights, 8, shift);
+            for(int i = 0; i < length; i++) {
+                block[i] = OPAQUE | (red[i] << 16) | (green[i] << 8) | blue[i];
+            }
+            System.arraycopy(block, 0, pixels, start, length);
+        }
+    }
+
+    /**
+     * Compute one row of a fixed-point color matrix for a block of packed
+     * pixels, limited to 0-255.
+     */
+    private static void channel(int[] block, int length, int[] result,
+                                int[] weights, int row, int shift)
+    {
+        final int red = weights[row];
+        final int green = weights[row + 1];
+        final int blue = weights[row + 2];
+        final int offset = weights[row + 3];
+        for(int i = 0; i < length; i++) {
+            int pix = block[i];
+            int value = (red * ((pix >>> 16) & 0xff) + green * ((pix >>> 8) & 0xff)
+                         + blue * (pix & 0xff) + offset) >> shift;
+            // limit to 0-255 with masks: negative values become 0, values
+            // above 255 become all ones before the final mask
+            value &= ~(value >> 31);
+            result[i] = (value | ((255 - value) >> 31)) & 0xff;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * PixelKernelsTest checks that the filters give exactly the same result
+ * with the SIMD-friendly kernels of PixelKernels as with their scalar
+ * code (lookup tables or plain per-pixel code), as if the system property
+ * "imageviewer.vectorize" were on and off.
+ *
+ * Every point filter that has a kernel is applied to random pixels
+ * (with random alpha values), both to whole images of odd sizes and to
+ * ranges of pixels that start and end at odd places, around the block
+ * size of the color matrix kernel.
+ *
+ * Run it with "java PixelKernelsTest". It prints each case checked and
+ * stops with an AssertionError at the first difference.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.0
+ */
+public class PixelKernelsTest
+{
+    // image sizes to check: odd widths, and widths around the block size
+    private static final int[][] SIZES = {
+        { 1, 1 }, { 3, 7 }, { 17, 5 }, { 333, 211 }, { 1023, 3 }, { 1025, 9 }, { 4099, 2 }
+    };
+    // ranges of a row of pixels to check, as from and to
+    private static final int[][] RANGES = {
+        { 0, 0 }, { 0, 1 }, { 5, 6 }, { 3, 1030 }, { 1, 2047 }, { 1023, 3073 }, { 7, 5000 }
+    };
+
+    private final Random random;
+    private int cases;
+
+    /**
+     * Create a test with a fixed seed, so that every run checks the same
+     * pixels.
+     */
+    public PixelKernelsTest()
+    {
+        random = new Random(105);
+        cases = 0;
+    }
+
+    /**
+     * Check all filters that have a kernel.
+     *
+     * @param args Not used.
+     */
+    public static void main(String[] args)
+    {
+        PixelKernelsTest test = new PixelKernelsTest();
+        test.run();
+        System.out.println("All " + test.cases + " cases give the same result.");
+    }
+
+    /**
+     * Check all filters that have a kernel, and restore the choice of
+     * path afterwards.
+     */
+    public void run()
+    {
+        boolean enabled = PixelKernels.isEnabled();
+        try {
+            check(new InvertFilter("Invert"));
+            check(new SolarizeFilter("Solarize"));
+            check(new ThresholdFilter("Threshold"));
+            check(new GrayScaleFilter("Grayscale"));
+            check(new SepiaFilter("Sepia"));
+            // negative weights and offsets, so that results are limited at
+            // both ends
+            check(new ColorMatrixFilter("Mixed", new double[][] {
+                { 1.7, -0.4, 0.2, -30 },
+                { -0.9, 2.1, 0.05, 12.5 },
+                { 0.3, 0.3, -1.2, 200 }
+            }));
+        }
+        finally {
+            PixelKernels.setEnabled(enabled);
+        }
+    }
+
+    /**
+     * Check one filter on whole images and on ranges of pixels.
+     */
+    private void check(PointFilter filter)
+    {
+        for(int[] size : SIZES) {
+            OFImage image = randomImage(size[0], size[1]);
+            int[] vector = filterImage(filter, image, true);
+            int[] scalar = filterImage(filter, image, false);
+            compare(filter.getName() + " on " + size[0] + "x" + size[1], vector, scalar);
+        }
+        int[] pixels = randomPixels(5000);
+        for(int[] range : RANGES) {
+            int[] vector = filterRange(filter, pixels, range[0], range[1], true);
+            int[] scalar = filterRange(filter, pixels, range[0], range[1], false);
+            compare(filter.getName() + " on pixels " + range[0] + " to " + range[1],
+                    vector, scalar);
+        }
+    }
+
+    /**
+     * Apply a filter to a copy of an image, with or without the kernels.
+     */
+    private static int[] filterImage(PointFilter filter, OFImage image, boolean kernels)
+    {
+        OFImage copy = new OFImage(image);
+        PixelKernels.setEnabled(kernels);
+        filter.apply(copy);
+        return copy.getPixelData();
+    }
+
+    /**
+     * Apply a filter to a range of a copy of some pixels, with or without
+     * the kernels.
+     */
+    private static int[] filterRange(PointFilter filter, int[] pixels, int from, int to,
+                                     boolean kernels)
+    {
+        int[] copy = pixels.clone();
+        PixelKernels.setEnabled(kernels);
+        filter.filterPixels(copy, from, to);
+        return copy;
+    }
+
+    /**
+     * Stop at the first pixel where the two results differ.
+     */
+    private void compare(String name, int[] vector, int[] scalar)
+    {
+        cases++;
+        if(!Arrays.equals(vector, scalar)) {
+            int i = Arrays.mismatch(vector, scalar);
+            throw new AssertionError(name + ": pixel " + i + " is "
+                                     + Integer.toHexString(vector[i]) + " with the kernels but "
+                                     + Integer.toHexString(scalar[i]) + " without");
+        }
+        System.out.println(name + ": same");
+    }
+
+    /**
+     * Return an image with alpha, filled with random pixels.
+     */
+    private OFImage randomImage(int width, int height)
+    {
+        OFImage image = new OFImage(width, height, true);
+        int[] pixels = image.getPixelData();
+        System.arraycopy(randomPixels(pixels.length), 0, pixels, 0, pixels.length);
+        return image;
+    }
+
+    /**
+     * Return random packed pixels (with random alpha), including some of
+     * the extreme channel values.
+     */
+    private int[] randomPixels(int count)
+    {
+        int[] pixels = new int[count];
+        int[] extremes = { 0x00000000, 0xffffffff, 0x80808080, 0x7f7f7f7f, 0xff000000, 0x00ffffff };
+        for(int i = 0; i < count; i++) {
+            pixels[i] = i < extremes.length ? extremes[i] : random.nextInt();
+        }
+        return pixels;
+    }
+}
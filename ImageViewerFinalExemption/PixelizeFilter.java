@@ -1,44 +1,142 @@
-import java.awt.Color;
+import java.util.Arrays;
 
 /**
  * An image filter to create a pixelization effect, like an enlarged
  * low-resolution digital image.
- * 
+ *
+ * The image is divided into square blocks, and every block is filled
+ * with one color: either the color of its top-left pixel, or the average
+ * color of all its pixels.
+ *
  * @author Michael Kölling and David J. Barnes.
- * @version 1.0
+ * @version 2.0
  */
 public class PixelizeFilter extends Filter
 {
+    // the block size used by the simple constructor
+    public static final int DEFAULT_BLOCK_SIZE = 5;
+
+    private final int blockSize;
+    private final boolean average;
+
     /**
-     * Constructor for objects of class PixelizeFilter.
+     * Constructor for objects of class PixelizeFilter, filling blocks of
+     * the default size with their top-left pixel.
      * @param name The name of the filter.
      */
     public PixelizeFilter(String name)
+    {
+        this(name, DEFAULT_BLOCK_SIZE, false);
+    }
+
+    /**
+     * Constructor for objects of class PixelizeFilter.
+     * @param name The name of the filter.
+     * @param blockSize The width and height of a block, in pixels.
+     * @param average true to fill each block with its average color,
+     *                false to use its top-left pixel.
+     */
+    public PixelizeFilter(String name, int blockSize, boolean average)
     {
         super(name);
+        if(blockSize < 1) {
+            throw new IllegalArgumentException("block size must be at least 1");
+        }
+        this.blockSize = blockSize;
+        this.average = average;
+    }
+
+    /**
+     * Pixelize reads all rows of the block a pixel lies in, which are at
+     * most blockSize - 1 rows away.
+     *
+     * @param  width   The width of the image.
+     * @param  height  The height of the image.
+     * @return The number of extra rows needed on either side of a band.
+     */
+    public int getHalo(int width, int height)
+    {
+        return blockSize - 1;
     }
 
     /**
-     * Apply this filter to an image.
-     * 
-     * @param  image  The image to be changed by this filter.
+     * Filter a band of rows of an image. The colors of a whole row of
+     * blocks are found in one pass over the source; then the first target
+     * row is filled block by block and copied to the other rows.
+     *
+     * @param  source   The packed pixels to read from.
+     * @param  sourceY  The image row of the first row in source.
+     * @param  target   The packed pixels of the image, to be changed.
+     * @param  width    The width of the image.
+     * @param  height   The height of the image.
+     * @param  fromY    The first row to change.
+     * @param  toY      The row after the last row to change.
      */
-    public void apply(OFImage image)
+    protected void filterRows(int[] source, int sourceY, int[] target,
+                              int width, int height, int fromY, int toY)
     {
-        final int PIXEL_SIZE = 5;
-        int width = image.getWidth();
-        int height = image.getHeight();
-        
-        for(int y = 0; y < height; y += PIXEL_SIZE) {
-            for(int x = 0; x < width; x += PIXEL_SIZE) {
-                Color pix = image.getPixel(x, y);
-                for(int dy = y; dy < y + PIXEL_SIZE; dy++) {
-                    for(int dx = x; dx < x + PIXEL_SIZE; dx++) {
-                        if( dx < width && dy < height )
-                            image.setPixel(dx, dy, pix);
-                    }
+        int blocks = (width + blockSize - 1) / blockSize;
+        int[] colors = new int[blocks];
+        long[] red = new long[blocks];
+        long[] green = new long[blocks];
+        long[] blue = new long[blocks];
+
+        for(int top = fromY - fromY % blockSize; top < toY; top += blockSize) {
+            int bottom = Math.min(top + blockSize, height);
+            if(average) {
+                averageColors(source, sourceY, width, top, bottom, colors, red, green, blue);
+            }
+            else {
+                int in = (top - sourceY) * width;
+                for(int b = 0; b < blocks; b++) {
+                    colors[b] = source[in + b * blockSize];
                 }
             }
+
+            // fill the first row of this block row inside the band, then copy it
+            int firstY = Math.max(top, fromY);
+            int lastY = Math.min(bottom, toY);
+            int first = firstY * width;
+            for(int b = 0; b < blocks; b++) {
+                int x = b * blockSize;
+                Arrays.fill(target, first + x, first + Math.min(x + blockSize, width), colors[b]);
+            }
+            for(int y = firstY + 1; y < lastY; y++) {
+                System.arraycopy(target, first, target, y * width, width);
+            }
+        }
+    }
+
+    /**
+     * Compute the average color of every block in a row of blocks.
+     */
+    private void averageColors(int[] source, int sourceY, int width, int top, int bottom,
+                               int[] colors, long[] red, long[] green, long[] blue)
+    {
+        Arrays.fill(red, 0);
+        Arrays.fill(green, 0);
+        Arrays.fill(blue, 0);
+        for(int y = top; y < bottom; y++) {
+            int in = (y - sourceY) * width;
+            for(int b = 0; b < colors.length; b++) {
+                int r = 0, g = 0, bl = 0;
+                int end = in + Math.min((b + 1) * blockSize, width);
+                for(int i = in + b * blockSize; i < end; i++) {
+                    int pix = source[i];
+                    r += OFImage.red(pix);
+                    g += OFImage.green(pix);
+                    bl += OFImage.blue(pix);
+                }
+                red[b] += r;
+                green[b] += g;
+                blue[b] += bl;
+            }
+        }
+        long rows = bottom - top;
+        for(int b = 0; b < colors.length; b++) {
+            long count = rows * (Math.min((b + 1) * blockSize, width) - b * blockSize);
+            colors[b] = OFImage.rgb((int) (red[b] / count), (int) (green[b] / count),
+                                    (int) (blue[b] / count));
         }
     }
 }
@@ -0,0 +1,58 @@
+/**
+ * PointFilter is an abstract superclass for filters whose result for
+ * each pixel depends only on the old value of that same pixel (for
+ * example, making an image darker or inverting its colors).
+ *
+ * Point filters change the image in place and never need a halo. Runs
+ * of point filters can be fused by a FilterPipeline into a single pass
+ * over the image.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 2.1
+ */
+public abstract class PointFilter extends Filter
+{
+    /**
+     * Create a new point filter with a given name.
+     * @param name The name of the filter.
+     */
+    public PointFilter(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * @return true, since a point filter only looks at each pixel on its
+     *         own.
+     */
+    public boolean isPointwise()
+    {
+        return true;
+    }
+
+    /**
+     * Filter a band of rows of an image, in place.
+     *
+     * @param  source   The packed pixels to read from (the same as target).
+     * @param  sourceY  The image row of the first row in source.
+     * @param  target   The packed pixels of the image, to be changed.
+     * @param  width    The width of the image.
+     * @param  height   The height of the image.
+     * @param  fromY    The first row to change.
+     * @param  toY      The row after the last row to change.
+     */
+    protected void filterRows(int[] source, int sourceY, int[] target,
+                              int width, int height, int fromY, int toY)
+    {
+        filterPixels(target, fromY * width, toY * width);
+    }
+
+    /**
+     * Apply this filter to a range of packed pixels, in place.
+     *
+     * @param  pixels  The packed pixels.
+     * @param  from    The index of the first pixel to change.
+     * @param  to      The index after the last pixel to change.
+     */
+    public abstract void filterPixels(int[] pixels, int from, int to);
+}
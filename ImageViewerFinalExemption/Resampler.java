@@ -0,0 +1,373 @@
+import java.util.Arrays;
+
+/**
+ * A Resampler changes the size of images by any factor, in one step.
+ *
+ * Each direction is handled on its own (the methods are separable): the
+ * image is first resized across its rows and then down its columns, or
+ * the other way round if that is less work. For every new column (or
+ * row) the source pixels it is made from and their weights are worked
+ * out once, in a weight table, and then used for every row (or column).
+ *
+ * When an image is made smaller in a direction, every new pixel is the
+ * average of the area of source pixels it covers, with partly covered
+ * pixels counted by how much of them is covered. This uses every source
+ * pixel, unlike simply leaving pixels out, and so avoids jagged edges
+ * and moiré patterns. When an image is made larger, new pixels are
+ * interpolated from their neighbors with one of the methods below.
+ *
+ * Weights are fixed-point numbers, and each band of rows is resampled as
+ * a filter on the new image, so a FilterExecutor does the work on
+ * several processor cores. The alpha channel is resampled like the other
+ * channels.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.1
+ */
+public class Resampler
+{
+    /**
+     * The ways of interpolating pixels when an image is made larger.
+     */
+    public enum Method
+    {
+        // straight lines between neighboring pixels
+        BILINEAR("Bilinear", 1),
+        // cubic curves through the four nearest pixels (Keys, a = -0.5)
+        BICUBIC("Bicubic", 2),
+        // a windowed sinc over the six nearest pixels; the sharpest
+        LANCZOS("Lanczos", 3);
+
+        private final String name;
+        // the distance (in source pixels) beyond which weights are 0
+        private final int radius;
+
+        private Method(String name, int radius)
+        {
+            this.name = name;
+            this.radius = radius;
+        }
+
+        /**
+         * Return the weight of a source pixel at a given distance.
+         */
+        private double weight(double distance)
+        {
+            double x = Math.abs(distance);
+            switch(this) {
+                case BILINEAR:
+                    return x < 1 ? 1 - x : 0;
+                case BICUBIC:
+                    if(x < 1) {
+                        return (1.5 * x - 2.5) * x * x + 1;
+                    }
+                    return x < 2 ? ((-0.5 * x + 2.5) * x - 4) * x + 2 : 0;
+                default:
+                    if(x < 1e-9) {
+                        return 1;
+                    }
+                    if(x >= radius) {
+                        return 0;
+                    }
+                    double px = Math.PI * x;
+                    return radius * Math.sin(px) * Math.sin(px / radius) / (px * px);
+            }
+        }
+
+        /**
+         * @return The name of this method.
+         */
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    // the number of fraction bits of the weights
+    private static final int SHIFT = 14;
+    private static final int ONE = 1 << SHIFT;
+
+    private final Method method;
+
+    /**
+     * Create a resampler that interpolates with a given method when it
+     * makes images larger.
+     * @param method The interpolation method.
+     */
+    public Resampler(Method method)
+    {
+        this.method = method;
+    }
+
+    /**
+     * Return the interpolation method of this resampler.
+     * @return The method used when making images larger.
+     */
+    public Method getMethod()
+    {
+        return method;
+    }
+
+    /**
+     * Create a copy of an image with a new size, using the default
+     * executor.
+     *
+     * @param  image   The image to resize.
+     * @param  width   The new width (at least 1).
+     * @param  height  The new height (at least 1).
+     * @return The resized image.
+     */
+    public OFImage resize(OFImage image, int width, int height)
+    {
+        return resize(image, width, height, FilterExecutor.getDefault());
+    }
+
+    /**
+     * Create a copy of an image with a new size.
+     *
+     * @param  image     The image to resize.
+     * @param  width     The new width (at least 1).
+     * @param  height    The new height (at least 1).
+     * @param  executor  The executor that fills the new image.
+     * @return The resized image.
+     */
+    public OFImage resize(OFImage image, int width, int height, FilterExecutor executor)
+    {
+        if(width < 1 || height < 1) {
+            throw new IllegalArgumentException("image size must be at least 1x1");
+        }
+        int oldWidth = image.getWidth();
+        int oldHeight = image.getHeight();
+        boolean alpha = image.getColorModel().hasAlpha();
+        WeightTable across = oldWidth != width ? new WeightTable(oldWidth, width) : null;
+        WeightTable down = oldHeight != height ? new WeightTable(oldHeight, height) : null;
+
+        if(across == null && down == null) {
+            return new OFImage(image);
+        }
+        if(across == null || down == null) {
+            OFImage result = new OFImage(width, height, alpha);
+            // the source is only read, so it keeps its snapshot
+            Filter pass = across != null ? new RowPass(image.getTrackedPixelData(), oldWidth, across)
+                                         : new ColumnPass(image.getTrackedPixelData(), down);
+            pass.apply(result, executor);
+            return result;
+        }
+        // resize first in the direction that leaves less work for the second pass
+        long rowsFirst = (long) oldHeight * width * across.taps + (long) width * height * down.taps;
+        long columnsFirst = (long) oldWidth * height * down.taps + (long) width * height * across.taps;
+        if(rowsFirst <= columnsFirst) {
+            OFImage between = new OFImage(width, oldHeight, alpha);
+            new RowPass(image.getTrackedPixelData(), oldWidth, across).apply(between, executor);
+            OFImage result = new OFImage(width, height, alpha);
+            new ColumnPass(between.getPixelData(), down).apply(result, executor);
+            return result;
+        }
+        else {
+            OFImage between = new OFImage(oldWidth, height, alpha);
+            new ColumnPass(image.getTrackedPixelData(), down).apply(between, executor);
+            OFImage result = new OFImage(width, height, alpha);
+            new RowPass(between.getPixelData(), oldWidth, across).apply(result, executor);
+            return result;
+        }
+    }
+
+    /**
+     * Round a fixed-point channel sum and limit it to 0-255.
+     */
+    private static int channel(int sum)
+    {
+        int value = (sum + ONE / 2) >> SHIFT;
+        // negative values become 0, values above 255 become 255
+        value &= ~(value >> 31);
+        return (value | ((255 - value) >> 31)) & 0xff;
+    }
+
+    /**
+     * The source pixels and weights of every new pixel along one
+     * direction. Every new pixel uses the same number of taps (unused
+     * taps have weight 0), starting at its own first source pixel, and
+     * its weights add up to exactly ONE.
+     */
+    private class WeightTable
+    {
+        private final int taps;
+        private final int[] first;
+        private final int[] weights;
+
+        /**
+         * Work out the weights for resizing from one length to another.
+         */
+        public WeightTable(int oldLength, int newLength)
+        {
+            double scale = (double) newLength / oldLength;
+            // when shrinking, a new pixel covers 1/scale source pixels (and
+            // touches one more when not aligned); when growing, at most
+            // 2 * radius pixel centers lie within the radius on either side
+            double support = scale < 1 ? 0.5 / scale : method.radius - 0.5;
+            int span = scale < 1 ? (int) Math.ceil(1 / scale) + 1 : 2 * method.radius;
+            taps = Math.min(oldLength, span);
+            first = new int[newLength];
+            weights = new int[newLength * taps];
+            double[] raw = new double[taps];
+            for(int i = 0; i < newLength; i++) {
+                // the source position of the new pixel's center
+                double center = (i + 0.5) / scale;
+                int start = (int) Math.floor(center - support);
+                start = Math.max(0, Math.min(start, oldLength - taps));
+                first[i] = start;
+                double total = 0;
+                for(int k = 0; k < taps; k++) {
+                    int j = start + k;
+                    if(scale < 1) {
+                        // the part of source pixel j covered by the new pixel
+                        double from = Math.max(j, i / scale);
+                        double to = Math.min(j + 1, (i + 1) / scale);
+                        raw[k] = Math.max(0, to - from);
+                    }
+                    else {
+                        raw[k] = method.weight(j + 0.5 - center);
+                    }
+                    total += raw[k];
+                }
+                if(scale >= 1) {
+                    // source pixels beyond the edges count as the edge pixels
+                    total = addEdgeWeights(raw, start, oldLength, center, total);
+                }
+                int sum = 0;
+                int largest = 0;
+                for(int k = 0; k < taps; k++) {
+                    int weight = (int) Math.round(raw[k] / total * ONE);
+                    weights[i * taps + k] = weight;
+                    sum += weight;
+                    if(Math.abs(weight) > Math.abs(weights[i * taps + largest])) {
+                        largest = k;
+                    }
+                }
+                // make the weights add up to exactly ONE, so flat areas stay flat
+                weights[i * taps + largest] += ONE - sum;
+            }
+        }
+
+        /**
+         * Add the weights of source positions outside the image (within
+         * the method's radius) to the edge pixels.
+         *
+         * @return The new total of the weights.
+         */
+        private double addEdgeWeights(double[] raw, int start, int oldLength, double center,
+                                      double total)
+        {
+            int lowest = (int) Math.floor(center - method.radius);
+            int highest = (int) Math.ceil(center + method.radius);
+            for(int j = lowest; j <= highest; j++) {
+                if(j >= start && j < start + taps) {
+                    continue;
+                }
+                int clamped = Math.max(0, Math.min(j, oldLength - 1));
+                if(clamped >= start && clamped < start + taps) {
+                    double weight = method.weight(j + 0.5 - center);
+                    raw[clamped - start] += weight;
+                    total += weight;
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Resamples every row of an image to a new width.
+     */
+    private static class RowPass extends Filter
+    {
+        private final int[] source;
+        private final int sourceWidth;
+        private final WeightTable table;
+
+        public RowPass(int[] source, int sourceWidth, WeightTable table)
+        {
+            super("Resize rows");
+            this.source = source;
+            this.sourceWidth = sourceWidth;
+            this.table = table;
+        }
+
+        protected void filterRows(int[] unused, int sourceY, int[] target,
+                                  int width, int height, int fromY, int toY)
+        {
+            int taps = table.taps;
+            int[] weights = table.weights;
+            for(int y = fromY; y < toY; y++) {
+                int row = y * sourceWidth;
+                int out = y * width;
+                for(int x = 0; x < width; x++) {
+                    int a = 0, r = 0, g = 0, b = 0;
+                    int index = row + table.first[x];
+                    int w = x * taps;
+                    for(int k = 0; k < taps; k++) {
+                        int pix = source[index + k];
+                        int weight = weights[w + k];
+                        a += weight * (pix >>> 24);
+                        r += weight * ((pix >>> 16) & 0xff);
+                        g += weight * ((pix >>> 8) & 0xff);
+                        b += weight * (pix & 0xff);
+                    }
+                    target[out + x] = channel(a) << 24 | channel(r) << 16
+                                      | channel(g) << 8 | channel(b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resamples every column of an image to a new height. Rows are added
+     * up one whole row at a time, which reads memory in order.
+     */
+    private static class ColumnPass extends Filter
+    {
+        private final int[] source;
+        private final WeightTable table;
+
+        public ColumnPass(int[] source, WeightTable table)
+        {
+            super("Resize columns");
+            this.source = source;
+            this.table = table;
+        }
+
+        protected void filterRows(int[] unused, int sourceY, int[] target,
+                                  int width, int height, int fromY, int toY)
+        {
+            int taps = table.taps;
+            int[] alpha = new int[width];
+            int[] red = new int[width];
+            int[] green = new int[width];
+            int[] blue = new int[width];
+            for(int y = fromY; y < toY; y++) {
+                Arrays.fill(alpha, 0);
+                Arrays.fill(red, 0);
+                Arrays.fill(green, 0);
+                Arrays.fill(blue, 0);
+                for(int k = 0; k < taps; k++) {
+                    int weight = table.weights[y * taps + k];
+                    if(weight == 0) {
+                        continue;
+                    }
+                    int row = (table.first[y] + k) * width;
+                    for(int x = 0; x < width; x++) {
+                        int pix = source[row + x];
+                        alpha[x] += weight * (pix >>> 24);
+                        red[x] += weight * ((pix >>> 16) & 0xff);
+                        green[x] += weight * ((pix >>> 8) & 0xff);
+                        blue[x] += weight * (pix & 0xff);
+                    }
+                }
+                int out = y * width;
+                for(int x = 0; x < width; x++) {
+                    target[out + x] = channel(alpha[x]) << 24 | channel(red[x]) << 16
+                                      | channel(green[x]) << 8 | channel(blue[x]);
+                }
+            }
+        }
+    }
+}
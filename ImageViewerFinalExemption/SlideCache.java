@@ -0,0 +1,206 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A SlideCache holds the decoded images of a slide show, so that the
+ * slide show itself only needs to keep the list of files.
+ *
+ * Images are loaded in the background (see ImageLoader) at the size they
+ * are shown at. The cache keeps them up to a memory budget, dropping the
+ * images used least recently first. While a slide is shown, the next few
+ * slides are loaded ahead (prefetch), so that they are ready by the time
+ * they are due.
+ *
+ * A SlideCache must only be used on the Swing event thread.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.1
+ */
+public class SlideCache
+{
+    // The number of slides loaded ahead by default
+    public static final int DEFAULT_PREFETCH = 3;
+
+    private final int maxWidth;
+    private final int maxHeight;
+    private final long budget;
+    private final int prefetchCount;
+
+    // The decoded images, least recently used first, and their size
+    private final LinkedHashMap<File, OFImage> images;
+    private long memoryUsed;
+    // The loads still running, and who is waiting for each
+    private final Map<File, ImageLoader.Task> loading;
+    private final Map<File, List<Consumer<OFImage>>> waiting;
+
+    /**
+     * Create a cache for slides of a given size, with a budget of an
+     * eighth of the maximum heap size (at least room for the slides loaded
+     * ahead).
+     *
+     * @param maxWidth   The width the slides are shown at.
+     * @param maxHeight  The height the slides are shown at.
+     */
+    public SlideCache(int maxWidth, int maxHeight)
+    {
+        this(maxWidth, maxHeight,
+             Math.max(Runtime.getRuntime().maxMemory() / 8,
+                      4L * maxWidth * maxHeight * (DEFAULT_PREFETCH + 1)),
+             DEFAULT_PREFETCH);
+    }
+
+    /**
+     * Create a cache for slides of a given size.
+     *
+     * @param maxWidth       The width the slides are shown at.
+     * @param maxHeight      The height the slides are shown at.
+     * @param budget         The most memory to use for images, in bytes.
+     * @param prefetchCount  The number of slides to load ahead.
+     */
+    public SlideCache(int maxWidth, int maxHeight, long budget, int prefetchCount)
+    {
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.budget = budget;
+        this.prefetchCount = prefetchCount;
+        images = new LinkedHashMap<>(16, 0.75f, true);
+        memoryUsed = 0;
+        loading = new HashMap<>();
+        waiting = new HashMap<>();
+    }
+
+    /**
+     * Get the image of a file. If it is in the cache, it is passed on at
+     * once; otherwise it is passed on when it has been loaded.
+     *
+     * @param file        The image file.
+     * @param whenLoaded  What to do with the image (which is null if the
+     *                    file could not be read).
+     */
+    public void fetch(File file, Consumer<OFImage> whenLoaded)
+    {
+        OFImage image = images.get(file);
+        if(image != null) {
+            whenLoaded.accept(image);
+            return;
+        }
+        waiting.computeIfAbsent(file, f -> new ArrayList<>()).add(whenLoaded);
+        load(file);
+    }
+
+    /**
+     * Load the slides after a given one ahead, in the background. Those
+     * already loaded count as just used, so that they are the last to be
+     * dropped.
+     *
+     * @param files  The files of the slide show.
+     * @param from   The index of the first slide to load ahead.
+     */
+    public void prefetch(List<File> files, int from)
+    {
+        for(int i = from; i < Math.min(files.size(), from + prefetchCount); i++) {
+            if(images.get(files.get(i)) == null) {
+                load(files.get(i));
+            }
+        }
+    }
+
+    /**
+     * Drop all images, and stop all loads.
+     */
+    public void clear()
+    {
+        for(ImageLoader.Task task : loading.values()) {
+            task.cancel();
+        }
+        loading.clear();
+        waiting.clear();
+        images.clear();
+        memoryUsed = 0;
+    }
+
+    /**
+     * @return The memory used by the images in the cache, in bytes.
+     */
+    public long getMemoryUsed()
+    {
+        return memoryUsed;
+    }
+
+    // ---- support methods ----
+
+    /**
+     * Start loading a file, unless it is being loaded already.
+     */
+    private void load(File file)
+    {
+        if(loading.containsKey(file)) {
+            return;
+        }
+        ImageLoader.Task task = ImageLoader.getDefault().load(file, maxWidth, maxHeight,
+                                                              new ImageLoader.Listener() {
+            public void previewLoaded(OFImage preview, double scale, int percent)
+            {
+            }
+
+            public void imageLoaded(OFImage image)
+            {
+                loading.remove(file);
+                images.put(file, image);
+                memoryUsed += sizeOf(image);
+                trim(file);
+                notifyWaiting(file, image);
+            }
+
+            public void loadFailed()
+            {
+                loading.remove(file);
+                notifyWaiting(file, null);
+            }
+        });
+        loading.put(file, task);
+    }
+
+    /**
+     * Pass the image of a file on to all who are waiting for it.
+     */
+    private void notifyWaiting(File file, OFImage image)
+    {
+        List<Consumer<OFImage>> waiters = waiting.remove(file);
+        if(waiters != null) {
+            for(Consumer<OFImage> waiter : waiters) {
+                waiter.accept(image);
+            }
+        }
+    }
+
+    /**
+     * Drop the least recently used images until the cache is within its
+     * budget, but keep the image just added.
+     */
+    private void trim(File newest)
+    {
+        Iterator<Map.Entry<File, OFImage>> entries = images.entrySet().iterator();
+        while(memoryUsed > budget && entries.hasNext()) {
+            Map.Entry<File, OFImage> entry = entries.next();
+            if(!entry.getKey().equals(newest)) {
+                memoryUsed -= sizeOf(entry.getValue());
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * Return the memory used by an image, in bytes.
+     */
+    private static long sizeOf(OFImage image)
+    {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+}
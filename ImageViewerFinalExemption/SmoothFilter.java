@@ -1,105 +1,164 @@
-import java.awt.Color;
-import java.util.List;
-import java.util.ArrayList;
-
 /**
  * An image filter to reduce sharp edges and pixelization. A bit like
  * a soft lens.
  * 
+ * Each pixel becomes the average of all pixels in a square around it
+ * (a box blur). The size of the square is set by the radius: radius 1
+ * averages a pixel with its 8 neighbors. The average is computed with
+ * running sums, first along each row and then down each column, so the
+ * cost per pixel is the same for every radius, and so is the memory
+ * used: only one row of sums is kept.
+ * 
  * @author Michael Kölling and David J. Barnes.
- * @version 1.0
+ * @version 2.1
  */
 public class SmoothFilter extends Filter
 {
-    private OFImage original;
-    private int width;
-    private int height;
-    
+    // the largest radius allowed; keeps the channel sums within an int
+    public static final int MAX_RADIUS = 1000;
+
+    private final int radius;
+
     /**
-     * Constructor for objects of class SmoothFilter.
+     * Constructor for objects of class SmoothFilter. The filter averages
+     * each pixel with its direct neighbors.
      * @param name The name of the filter.
      */
     public SmoothFilter(String name)
     {
-        super(name);
+        this(name, 1);
     }
 
     /**
-     * Apply this filter to an image.
-     * 
-     * @param  image  The image to be changed by this filter.
+     * Constructor for objects of class SmoothFilter with a given radius.
+     * @param name The name of the filter.
+     * @param radius The distance (in pixels) of the farthest neighbors
+     *               included in the average, from 1 to MAX_RADIUS.
      */
-    public void apply(OFImage image)
+    public SmoothFilter(String name, int radius)
     {
-        original = new OFImage(image);
-        width = original.getWidth();
-        height = original.getHeight();
-        
-        for(int y = 0; y < height; y++) {
-            for(int x = 0; x < width; x++) {
-                image.setPixel(x, y, smooth(x, y));
-            }
+        super(name);
+        if(radius < 1 || radius > MAX_RADIUS) {
+            throw new IllegalArgumentException("radius must be between 1 and " + MAX_RADIUS);
         }
+        this.radius = radius;
     }
-    
+
     /**
-     * Return a new color that is the smoothed color of a given
-     * position. The "smoothed color" is the color value that is the
-     * average of this pixel and all the adjacent pixels.
-     * @param xpos The xposition of the pixel.
-     * @param ypos The yposition of the pixel.
-     * @return The smoothed color.
+     * Return the radius of this filter.
+     * 
+     * @return The radius of the averaged square around each pixel.
      */
-    private Color smooth(int xpos, int ypos)
+    public int getRadius()
     {
-        List<Color> pixels = new ArrayList<>(9);
-        
-        for(int y = ypos - 1; y <= ypos + 1; y++) {
-            for(int x = xpos - 1; x <= xpos + 1; x++) {
-                if( x >= 0 && x < width && y >= 0 && y < height )
-                    pixels.add(original.getPixel(x, y));
-            }
-        }
-
-        return new Color(avgRed(pixels), avgGreen(pixels), avgBlue(pixels));
+        return radius;
     }
 
     /**
-     * @param pixels The list of pixels.
-     * @return The average of all the red values in the given list of pixels.
+     * Smoothing reads up to radius rows above and below each pixel.
+     * 
+     * @param  width   The width of the image.
+     * @param  height  The height of the image.
+     * @return The number of extra rows needed on either side of a band.
      */
-    private int avgRed(List<Color> pixels)
+    public int getHalo(int width, int height)
     {
-        int total = 0;
-        for(Color color : pixels) {
-            total += color.getRed();
-        }
-        return total / pixels.size();
+        return radius;
     }
 
     /**
-     * @param pixels The list of pixels.
-     * @return The average of all the green values in the given list of pixels.
+     * Filter a band of rows of an image.
+     * 
+     * The column sums slide down the band, adding the horizontal sums of
+     * the row that enters the square and subtracting those of the one
+     * that leaves. The horizontal sums of a row are not kept: they are
+     * computed again from the source (which holds the halo rows) when
+     * the row leaves.
+     * 
+     * @param  source   The packed pixels to read from.
+     * @param  sourceY  The image row of the first row in source.
+     * @param  target   The packed pixels of the image, to be changed.
+     * @param  width    The width of the image.
+     * @param  height   The height of the image.
+     * @param  fromY    The first row to change.
+     * @param  toY      The row after the last row to change.
      */
-    private int avgGreen(List<Color> pixels)
+    protected void filterRows(int[] source, int sourceY, int[] target,
+                              int width, int height, int fromY, int toY)
     {
-        int total = 0;
-        for(Color color : pixels) {
-            total += color.getGreen();
+        if(fromY >= toY) {
+            return;
+        }
+        int[] sumRed = new int[width];
+        int[] sumGreen = new int[width];
+        int[] sumBlue = new int[width];
+        int[] countX = new int[width];
+        for(int x = 0; x < width; x++) {
+            countX[x] = Math.min(width - 1, x + radius) - Math.max(0, x - radius) + 1;
+        }
+
+        // start with the rows around the first row of the band
+        int firstY = Math.max(0, fromY - radius);
+        int lastY = Math.min(height - 1, fromY + radius);
+        for(int y = firstY; y <= lastY; y++) {
+            addRow(source, sourceY, width, y, 1, sumRed, sumGreen, sumBlue);
+        }
+
+        for(int y = fromY; y < toY; y++) {
+            int countY = lastY - firstY + 1;
+            int row = y * width;
+            for(int x = 0; x < width; x++) {
+                int count = countX[x] * countY;
+                target[row + x] = OFImage.rgb(sumRed[x] / count, sumGreen[x] / count, 
+                                              sumBlue[x] / count);
+            }
+            // slide the square one row down
+            if(y + 1 >= toY) {
+                break;
+            }
+            if(y - radius >= 0) {
+                addRow(source, sourceY, width, firstY, -1, sumRed, sumGreen, sumBlue);
+                firstY++;
+            }
+            if(y + radius + 1 < height) {
+                lastY++;
+                addRow(source, sourceY, width, lastY, 1, sumRed, sumGreen, sumBlue);
+            }
         }
-        return total / pixels.size();
     }
 
     /**
-     * @param pixels The list of pixels.
-     * @return The average of all the blue values in the given list of pixels.
+     * Compute the horizontal sums of one source row, and add them to the
+     * column sums (sign 1) or subtract them (sign -1).
      */
-    private int avgBlue(List<Color> pixels)
+    private void addRow(int[] source, int sourceY, int width, int y, int sign,
+                        int[] sumRed, int[] sumGreen, int[] sumBlue)
     {
-        int total = 0;
-        for(Color color : pixels) {
-            total += color.getBlue();
+        int start = (y - sourceY) * width;
+
+        int r = 0, g = 0, b = 0;
+        for(int x = 0; x <= Math.min(width - 1, radius); x++) {
+            int pix = source[start + x];
+            r += OFImage.red(pix);
+            g += OFImage.green(pix);
+            b += OFImage.blue(pix);
+        }
+        for(int x = 0; x < width; x++) {
+            sumRed[x] += sign * r;
+            sumGreen[x] += sign * g;
+            sumBlue[x] += sign * b;
+            if(x + radius + 1 < width) {
+                int pix = source[start + x + radius + 1];
+                r += OFImage.red(pix);
+                g += OFImage.green(pix);
+                b += OFImage.blue(pix);
+            }
+            if(x - radius >= 0) {
+                int pix = source[start + x - radius];
+                r -= OFImage.red(pix);
+                g -= OFImage.green(pix);
+                b -= OFImage.blue(pix);
+            }
         }
-        return total / pixels.size();
     }
 }
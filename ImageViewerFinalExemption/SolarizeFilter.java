@@ -1,12 +1,10 @@
-import java.awt.Color;
-
 /**
  * An image filter to create a solarization effect.
  * 
  * @author Michael Kölling and David J. Barnes.
- * @version 1.0
+ * @version 1.2
  */
-public class SolarizeFilter extends Filter
+public class SolarizeFilter extends LookupFilter
 {
     /**
      * Constructor for objects of class Solarize.
@@ -18,32 +16,42 @@ public class SolarizeFilter extends Filter
     }
 
     /**
-     * Apply this filter to an image.
+     * Apply this filter to a range of packed pixels, in place. Uses the
+     * SIMD-friendly kernel unless it is switched off, and the lookup
+     * table otherwise.
+     *
+     * @param  pixels  The packed pixels.
+     * @param  from    The index of the first pixel to change.
+     * @param  to      The index after the last pixel to change.
+     */
+    public void filterPixels(int[] pixels, int from, int to)
+    {
+        if(PixelKernels.isEnabled()) {
+            PixelKernels.solarize(pixels, from, to);
+        }
+        else {
+            super.filterPixels(pixels, from, to);
+        }
+    }
+
+    /**
+     * Create the lookup table for this filter: every channel value in
+     * the darker half is inverted, the brighter half is left unchanged.
      * 
-     * @param  image  The image to be changed by this filter.
+     * @return The lookup table of this filter.
      */
-    public void apply(OFImage image)
+    protected LookupTable createLookupTable()
     {
-        int height = image.getHeight();
-        int width = image.getWidth();
-        for(int y = 0; y < height; y++) {
-            for(int x = 0; x < width; x++) {
-                Color pix = image.getPixel(x, y);
-                int red = pix.getRed();
-                if(red <= 127) {
-                    red = 255 - red;
-                }
-                int green = pix.getGreen();
-                if(green <= 127) {
-                    green = 255 - green;
-                }
-                int blue = pix.getBlue();
-                if(blue <= 127) {
-                    blue = 255 - blue;
-                }
-                image.setPixel(x, y, new Color(red, green, blue));
+        int[] table = new int[LookupTable.CHANNEL_SIZE];
+        for(int value = 0; value < table.length; value++) {
+            if(value <= 127) {
+                table[value] = 255 - value;
+            }
+            else {
+                table[value] = value;
             }
         }
+        return LookupTable.perChannel(table);
     }
 
 }
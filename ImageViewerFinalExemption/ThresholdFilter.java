@@ -4,9 +4,9 @@ import java.awt.Color;
  * An three-level gray-based threshold filter.
  * 
  * @author Michael Kölling and David J. Barnes.
- * @version 1.0
+ * @version 1.2
  */
-public class ThresholdFilter extends Filter
+public class ThresholdFilter extends LookupFilter
 {
 	/**
 	 * Constructor for objects of class ThresholdFilter.
@@ -18,28 +18,45 @@ public class ThresholdFilter extends Filter
 	}
 
     /**
-     * Apply this filter to an image.
+     * Apply this filter to a range of packed pixels, in place. Uses the
+     * SIMD-friendly kernel unless it is switched off, and the lookup
+     * table otherwise.
+     *
+     * @param  pixels  The packed pixels.
+     * @param  from    The index of the first pixel to change.
+     * @param  to      The index after the last pixel to change.
+     */
+    public void filterPixels(int[] pixels, int from, int to)
+    {
+        if(PixelKernels.isEnabled()) {
+            PixelKernels.threshold(pixels, from, to);
+        }
+        else {
+            super.filterPixels(pixels, from, to);
+        }
+    }
+
+    /**
+     * Create the lookup table for this filter: each pixel becomes black,
+     * gray or white, depending on its brightness.
      * 
-     * @param  image  The image to be changed by this filter.
+     * @return The lookup table of this filter.
      */
-    public void apply(OFImage image)
+    protected LookupTable createLookupTable()
     {
-        int height = image.getHeight();
-        int width = image.getWidth();
-        for(int y = 0; y < height; y++) {
-            for(int x = 0; x < width; x++) {
-                Color pixel = image.getPixel(x, y);
-                int brightness = (pixel.getRed() + pixel.getBlue() + pixel.getGreen()) / 3;
-                if(brightness <= 85) {
-                    image.setPixel(x, y, Color.BLACK);
-                }
-                else if(brightness <= 170) {
-                    image.setPixel(x, y, Color.GRAY);
-                }
-                else {
-                    image.setPixel(x, y, Color.WHITE);
-                }
+        int[] table = new int[LookupTable.LUMINANCE_SIZE];
+        for(int sum = 0; sum < table.length; sum++) {
+            int brightness = sum / 3;
+            if(brightness <= 85) {
+                table[sum] = Color.BLACK.getRGB();
+            }
+            else if(brightness <= 170) {
+                table[sum] = Color.GRAY.getRGB();
+            }
+            else {
+                table[sum] = Color.WHITE.getRGB();
             }
         }
+        return LookupTable.luminance(table);
     }
 }
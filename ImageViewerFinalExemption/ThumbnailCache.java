@@ -0,0 +1,435 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ThumbnailCache keeps small copies of image files in a directory on
+ * disk, so that an image that was seen before can be previewed without
+ * decoding the image file again.
+ *
+ * Each thumbnail is stored in a file of its own, named after a hash of
+ * the image file's path, length and time of last change, and the size of
+ * the thumbnail. An image file that is changed therefore gets a new
+ * thumbnail, and the old one is dropped in time. The thumbnail files hold
+ * the raw pixels after a small header, so reading one is a single read
+ * with no decoding.
+ *
+ * Thumbnails are written to a temporary file first, which is then moved
+ * to its name in one step. Several threads, or several copies of the
+ * program, can use the same directory: a reader sees either a complete
+ * thumbnail or none. Thumbnail files that cannot be read are deleted, and
+ * so are temporary files left behind for more than an hour.
+ *
+ * The directory stays within a size budget: when it is exceeded, the
+ * thumbnails used least recently are deleted (using a thumbnail marks its
+ * file as changed).
+ *
+ * The default cache uses the directory given by the system property
+ * "imageviewer.thumbnails.dir", or ".imageviewer/thumbnails" in the
+ * user's home directory, and the budget given by
+ * "imageviewer.thumbnails.budget" (in megabytes, by default 256).
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.1
+ */
+public class ThumbnailCache
+{
+    // The default width and height of a thumbnail
+    public static final int DEFAULT_SIZE = 256;
+
+    private static final long MEGABYTE = 1024 * 1024;
+    // The first bytes of a thumbnail file ("OFTh"), and the header length
+    private static final int MAGIC = 0x4f465468;
+    private static final int HEADER_SIZE = 16;
+    // The age after which a temporary file is taken to be left behind
+    private static final long TEMPORARY_AGE = 60 * 60 * 1000;
+    // When the budget is exceeded, thumbnails are deleted down to this
+    // part of it, so that the directory is not scanned on every write
+    private static final double TRIM_TO = 0.9;
+
+    private static ThumbnailCache defaultCache;
+
+    private final Path directory;
+    private final long budget;
+    // The size of all thumbnail files, or -1 until the directory is scanned
+    private final AtomicLong diskUsed;
+
+    /**
+     * Create a cache in a directory (created when the first thumbnail is
+     * stored).
+     *
+     * @param directory  The directory to keep thumbnails in.
+     * @param budget     The most disk space to use, in bytes.
+     */
+    public ThumbnailCache(Path directory, long budget)
+    {
+        this.directory = directory;
+        this.budget = budget;
+        diskUsed = new AtomicLong(-1);
+    }
+
+    /**
+     * @return The cache shared by the application.
+     */
+    public static synchronized ThumbnailCache getDefault()
+    {
+        if(defaultCache == null) {
+            String name = System.getProperty("imageviewer.thumbnails.dir");
+            Path path = name != null ? Paths.get(name)
+                                     : Paths.get(System.getProperty("user.home"),
+                                                 ".imageviewer", "thumbnails");
+            long budget = Long.getLong("imageviewer.thumbnails.budget", 256) * MEGABYTE;
+            defaultCache = new ThumbnailCache(path, budget);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Return the thumbnail of an image file: from the cache if there is
+     * one, or else read from the image file (see
+     * ImageFileManager.loadThumbnail) and stored in the cache.
+     *
+     * @param file  The image file.
+     * @param size  The width and height the thumbnail must fit into.
+     * @return The thumbnail, or null if the file could not be read.
+     */
+    public OFImage getThumbnail(File file, int size)
+    {
+        OFImage thumbnail = getCached(file, size);
+        if(thumbnail == null) {
+            thumbnail = ImageFileManager.loadThumbnail(file, size);
+            if(thumbnail != null) {
+                write(file, size, thumbnail);
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Return the thumbnail of an image file if the cache has one.
+     *
+     * @param file  The image file.
+     * @param size  The width and height the thumbnail must fit into.
+     * @return The thumbnail, or null if there is none in the cache.
+     */
+    public OFImage getCached(File file, int size)
+    {
+        String key = key(file, size);
+        if(key == null) {
+            return null;
+        }
+        Path path = directory.resolve(key);
+        try {
+            OFImage thumbnail = read(path, size);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return thumbnail;
+        }
+        catch(NoSuchFileException exc) {
+            return null;
+        }
+        catch(IOException | RuntimeException exc) {
+            // damaged (or being deleted): drop it
+            deleteQuietly(path);
+            return null;
+        }
+    }
+
+    /**
+     * Make the thumbnail of an image (for when the image has been loaded
+     * anyway), to be stored with store. The thumbnail never shares pixels
+     * with the image, so the image may be changed afterwards.
+     *
+     * @param image  The image, as loaded from the file.
+     * @param size   The width and height the thumbnail must fit into.
+     * @return The thumbnail.
+     */
+    public static OFImage makeThumbnail(OFImage image, int size)
+    {
+        if(image.getWidth() <= size && image.getHeight() <= size) {
+            return new OFImage(image);
+        }
+        double scale = Math.min((double) size / image.getWidth(),
+                                (double) size / image.getHeight());
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        return new Resampler(Resampler.Method.BILINEAR).resize(image, width, height);
+    }
+
+    /**
+     * Store the thumbnail of an image file (see makeThumbnail). Does
+     * nothing if the cache has one already.
+     *
+     * @param file       The image file.
+     * @param thumbnail  The thumbnail.
+     * @param size       The width and height the thumbnail fits into.
+     */
+    public void store(File file, OFImage thumbnail, int size)
+    {
+        String key = key(file, size);
+        if(key == null || Files.exists(directory.resolve(key))) {
+            return;
+        }
+        write(file, size, thumbnail);
+    }
+
+    /**
+     * @return The disk space used by the thumbnails, in bytes.
+     */
+    public long getDiskUsed()
+    {
+        long used = diskUsed.get();
+        return used < 0 ? scan(new ArrayList<>()) : used;
+    }
+
+    // ---- support methods ----
+
+    /**
+     * Read a thumbnail file.
+     *
+     * @param path  The thumbnail file.
+     * @param size  The largest width and height the thumbnail may have.
+     * @return The thumbnail.
+     * @throws IOException if the file cannot be read or is damaged.
+     */
+    private static OFImage read(Path path, int size) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header);
+            header.flip();
+            int magic = header.getInt();
+            int width = header.getInt();
+            int height = header.getInt();
+            boolean alpha = header.getInt() != 0;
+            if(magic != MAGIC || width < 1 || height < 1 || width > size || height > size
+                    || channel.size() != HEADER_SIZE + 4L * width * height) {
+                throw new IOException("not a thumbnail: " + path);
+            }
+            ByteBuffer pixels = ByteBuffer.allocate(4 * width * height).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, pixels);
+            pixels.flip();
+            OFImage image = new OFImage(width, height, alpha);
+            pixels.asIntBuffer().get(image.getPixelData());
+            return image;
+        }
+    }
+
+    /**
+     * Write a thumbnail to its file, through a temporary file, and keep
+     * the directory within its budget.
+     *
+     * @param file       The image file.
+     * @param size       The width and height the thumbnail fits into.
+     * @param thumbnail  The thumbnail.
+     */
+    private void write(File file, int size, OFImage thumbnail)
+    {
+        String key = key(file, size);
+        if(key == null) {
+            return;
+        }
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            int width = thumbnail.getWidth();
+            int height = thumbnail.getHeight();
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * width * height)
+                                          .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(width).putInt(height)
+                  .putInt(thumbnail.getColorModel().hasAlpha() ? 1 : 0);
+            buffer.asIntBuffer().put(thumbnail.getPixelData());
+            buffer.position(0);
+
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while(buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Path target = directory.resolve(key);
+            boolean replaced = Files.exists(target);
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            temporary = null;
+            long used = diskUsed.get() < 0 ? -1 : diskUsed.addAndGet(replaced ? 0 : buffer.capacity());
+            if(used < 0 || used > budget) {
+                trim();
+            }
+        }
+        catch(IOException | RuntimeException exc) {
+            // the thumbnail is only not cached
+            if(temporary != null) {
+                deleteQuietly(temporary);
+            }
+        }
+    }
+
+    /**
+     * Count the disk space used, and if it exceeds the budget, delete the
+     * thumbnails used least recently until it is within TRIM_TO of it.
+     */
+    private synchronized void trim()
+    {
+        deleteLeftBehind();
+        List<Path> files = new ArrayList<>();
+        long used = scan(files);
+        if(used > budget) {
+            files.sort(Comparator.comparingLong(ThumbnailCache::lastModified));
+            for(Path path : files) {
+                if(used <= budget * TRIM_TO) {
+                    break;
+                }
+                long length = length(path);
+                if(deleteQuietly(path)) {
+                    used -= length;
+                }
+            }
+        }
+        diskUsed.set(used);
+    }
+
+    /**
+     * Delete temporary files that were not finished and moved in time,
+     * probably because the program writing them was stopped.
+     */
+    private void deleteLeftBehind()
+    {
+        long before = System.currentTimeMillis() - TEMPORARY_AGE;
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.tmp")) {
+            for(Path path : stream) {
+                if(lastModified(path) < before) {
+                    deleteQuietly(path);
+                }
+            }
+        }
+        catch(IOException exc) {
+            // try again next time
+        }
+    }
+
+    /**
+     * List the thumbnail files and add up their sizes.
+     *
+     * @param files  The list to add the thumbnail files to.
+     * @return The total size of the files, in bytes.
+     */
+    private long scan(List<Path> files)
+    {
+        long used = 0;
+        if(!Files.isDirectory(directory)) {
+            return 0;
+        }
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.thumb")) {
+            for(Path path : stream) {
+                files.add(path);
+                used += length(path);
+            }
+        }
+        catch(IOException exc) {
+            // count what could be listed
+        }
+        return used;
+    }
+
+    /**
+     * Return the name of the thumbnail file for an image file and a size.
+     *
+     * @return The name, or null if the image file does not exist.
+     */
+    private static String key(File file, int size)
+    {
+        if(!file.isFile()) {
+            return null;
+        }
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        }
+        catch(IOException exc) {
+            path = file.getAbsolutePath();
+        }
+        String identity = path + "\n" + file.length() + "\n" + file.lastModified() + "\n" + size;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                                       .digest(identity.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for(int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", hash[i]));
+            }
+            return name.append(".thumb").toString();
+        }
+        catch(NoSuchAlgorithmException exc) {
+            throw new IllegalStateException(exc);   // every Java platform has SHA-256
+        }
+    }
+
+    /**
+     * Read from a channel until a buffer is full.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) {
+                throw new IOException("file too short");
+            }
+        }
+    }
+
+    /**
+     * Return when a file was last changed, or 0 if that is not known.
+     */
+    private static long lastModified(Path path)
+    {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        }
+        catch(IOException exc) {
+            return 0;
+        }
+    }
+
+    /**
+     * Return the size of a file, or 0 if that is not known.
+     */
+    private static long length(Path path)
+    {
+        try {
+            return Files.size(path);
+        }
+        catch(IOException exc) {
+            return 0;
+        }
+    }
+
+    /**
+     * Delete a file if it exists.
+     *
+     * @return true if the file was deleted.
+     */
+    private static boolean deleteQuietly(Path path)
+    {
+        try {
+            return Files.deleteIfExists(path);
+        }
+        catch(IOException exc) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+
+import javax.swing.JComponent;
+import javax.swing.JFileChooser;
+
+/**
+ * A ThumbnailPreview shows the thumbnail of the file selected in a file
+ * chooser, as its accessory. The thumbnail is taken from the thumbnail
+ * cache (see ThumbnailCache) in the background, so that the chooser stays
+ * responsive while the user moves through a folder of large photos, and
+ * photos seen before are shown at once.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.1
+ */
+public class ThumbnailPreview extends JComponent implements PropertyChangeListener
+{
+    private static final long serialVersionUID = 1L;
+
+    // The width and height of the area the thumbnail is shown in
+    private static final int PREVIEW_SIZE = 160;
+
+    private OFImage thumbnail;
+    // The thumbnail being loaded, or null
+    private ImageLoader.Task loading;
+
+    /**
+     * Create a preview of the files selected in a file chooser. It is
+     * shown once it is set as the chooser's accessory (on the Swing event
+     * thread).
+     *
+     * @param chooser  The file chooser.
+     */
+    public ThumbnailPreview(JFileChooser chooser)
+    {
+        setPreferredSize(new Dimension(PREVIEW_SIZE + 10, PREVIEW_SIZE + 10));
+        chooser.addPropertyChangeListener(JFileChooser.SELECTED_FILE_CHANGED_PROPERTY, this);
+    }
+
+    /**
+     * Show the thumbnail of the newly selected file.
+     *
+     * @param event  The change of the selected file.
+     */
+    public void propertyChange(PropertyChangeEvent event)
+    {
+        if(loading != null) {
+            loading.cancel();
+            loading = null;
+        }
+        thumbnail = null;
+        repaint();
+        File file = (File) event.getNewValue();
+        if(file != null && file.isFile()) {
+            loading = ImageLoader.getDefault().loadThumbnail(file, ThumbnailCache.DEFAULT_SIZE,
+                                                             image -> {
+                loading = null;
+                thumbnail = image;
+                repaint();
+            });
+        }
+    }
+
+    /**
+     * Paint the thumbnail, made smaller to fit if needed, in the middle of
+     * this component.
+     *
+     * @param g  The graphics context to paint on.
+     */
+    public void paintComponent(Graphics g)
+    {
+        if(thumbnail == null) {
+            return;
+        }
+        double scale = Math.min(1, Math.min((double) PREVIEW_SIZE / thumbnail.getWidth(),
+                                            (double) PREVIEW_SIZE / thumbnail.getHeight()));
+        int width = (int) Math.round(thumbnail.getWidth() * scale);
+        int height = (int) Math.round(thumbnail.getHeight() * scale);
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                            RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(thumbnail, (getWidth() - width) / 2, (getHeight() - height) / 2,
+                     width, height, null);
+    }
+}
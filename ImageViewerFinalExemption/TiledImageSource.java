@@ -0,0 +1,347 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A TiledImageSource shows an image file that is too large to be loaded
+ * into memory as a whole. The image is cut into square tiles, and only
+ * the tiles that are needed are decoded from the file (using the source
+ * region of the image reader), when they are needed.
+ *
+ * Tiles are decoded at a level of detail: at level n, only every 2^n-th
+ * pixel of every 2^n-th row is read (using the reader's subsampling), so
+ * a tile at level n covers 2^n times the width and height of a tile at
+ * level 0 in the same memory. A view that shows the image at a small
+ * zoom factor can use a high level, and never needs more tiles than fit
+ * on the screen.
+ *
+ * Decoded tiles are kept in a cache, up to a limited number of bytes; the
+ * tiles used least recently are dropped first.
+ *
+ * Note that some formats (such as JPEG) can only be decoded from the
+ * start of the file, so decoding a tile far down such an image takes
+ * longer than decoding one at the top, although it needs no more memory.
+ * Tiles should therefore be decoded in the background (see
+ * ImageLoader.loadTile); getCachedTile never decodes, and never waits for
+ * a tile being decoded.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.1
+ */
+public class TiledImageSource
+{
+    // The width and height of a tile, in (subsampled) pixels
+    public static final int TILE_SIZE = 512;
+    // The highest level of detail (every 2^MAX_LEVEL-th pixel)
+    public static final int MAX_LEVEL = 10;
+    // The default limit on the memory used by cached tiles, in bytes
+    private static final long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
+
+    private final File file;
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int width;
+    private final int height;
+    // Set when the source is closed; tiles are no longer decoded then
+    private volatile boolean closed;
+
+    // The decoded tiles, least recently used first, and their total size
+    private final LinkedHashMap<Long, BufferedImage> cache;
+    private final long cacheLimit;
+    private long cacheSize;
+
+    /**
+     * Open an image file for tiled reading, with the default cache size.
+     * In case of any problem (the file does not exist or is not in a
+     * known image format) this method returns null.
+     *
+     * @param file  The image file.
+     * @return The source, or null if the file could not be read.
+     */
+    public static TiledImageSource open(File file)
+    {
+        return open(file, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Open an image file for tiled reading. In case of any problem (the
+     * file does not exist or is not in a known image format) this method
+     * returns null.
+     *
+     * @param file        The image file.
+     * @param cacheLimit  The most memory to use for cached tiles, in bytes.
+     * @return The source, or null if the file could not be read.
+     */
+    public static TiledImageSource open(File file, long cacheLimit)
+    {
+        ImageInputStream input = null;
+        try {
+            input = ImageIO.createImageInputStream(file);
+            if(input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if(!readers.hasNext()) {
+                input.close();
+                return null;
+            }
+            ImageReader reader = readers.next();
+            reader.setInput(input, false, true);
+            return new TiledImageSource(file, input, reader, cacheLimit);
+        }
+        catch(IOException exc) {
+            try {
+                if(input != null) {
+                    input.close();
+                }
+            }
+            catch(IOException ignored) {
+                // nothing more to do
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Create a source that reads tiles with an image reader.
+     */
+    private TiledImageSource(File file, ImageInputStream input, ImageReader reader,
+                             long cacheLimit) throws IOException
+    {
+        this.file = file;
+        this.input = input;
+        this.reader = reader;
+        this.cacheLimit = cacheLimit;
+        width = reader.getWidth(0);
+        height = reader.getHeight(0);
+        cache = new LinkedHashMap<>(64, 0.75f, true);
+        cacheSize = 0;
+    }
+
+    /**
+     * @return The file this source reads from.
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return The width of the image, in pixels.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return The height of the image, in pixels.
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Return the level of detail to use for showing the image at a zoom
+     * factor: the highest level that still has at least one pixel for
+     * every screen pixel.
+     *
+     * @param zoom  The zoom factor.
+     * @return The level of detail.
+     */
+    public static int getLevel(double zoom)
+    {
+        int level = 0;
+        while(level < MAX_LEVEL && zoom * (2 << level) <= 1) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @param level  A level of detail.
+     * @return The number of columns of tiles at that level.
+     */
+    public int getColumns(int level)
+    {
+        long span = (long) TILE_SIZE << level;
+        return (int) ((width + span - 1) / span);
+    }
+
+    /**
+     * @param level  A level of detail.
+     * @return The number of rows of tiles at that level.
+     */
+    public int getRows(int level)
+    {
+        long span = (long) TILE_SIZE << level;
+        return (int) ((height + span - 1) / span);
+    }
+
+    /**
+     * Return the level at which the whole image is a single tile (or the
+     * highest level, if the image is larger than that).
+     *
+     * @return The level of the overview tile.
+     */
+    public int getOverviewLevel()
+    {
+        int level = 0;
+        while(level < MAX_LEVEL && (getColumns(level) > 1 || getRows(level) > 1)) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Return a tile of the image, from the cache or decoded from the file.
+     * Its pixel (0, 0) is the image's pixel (column, row) * TILE_SIZE *
+     * 2^level, and every pixel stands for 2^level by 2^level pixels of the
+     * image. Tiles in the last row and column may be smaller.
+     *
+     * Decoding may take long, so this method should not be called on the
+     * Swing event thread.
+     *
+     * @param level   The level of detail.
+     * @param column  The column of the tile (0 to getColumns(level) - 1).
+     * @param row     The row of the tile (0 to getRows(level) - 1).
+     * @return The tile, or null if it could not be read.
+     */
+    public BufferedImage getTile(int level, int column, int row)
+    {
+        BufferedImage tile = getCachedTile(level, column, row);
+        if(tile != null) {
+            return tile;
+        }
+        // one tile at a time: the reader cannot decode two at once
+        synchronized(reader) {
+            tile = getCachedTile(level, column, row);
+            if(tile == null) {
+                tile = readTile(level, column, row);
+                if(tile != null) {
+                    addToCache(key(level, column, row), tile);
+                }
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Return a tile of the image if it is in the cache (see getTile).
+     *
+     * @param level   The level of detail.
+     * @param column  The column of the tile.
+     * @param row     The row of the tile.
+     * @return The tile, or null if it has not been decoded (or has been
+     *         dropped from the cache).
+     */
+    public synchronized BufferedImage getCachedTile(int level, int column, int row)
+    {
+        return cache.get(key(level, column, row));
+    }
+
+    /**
+     * Drop all cached tiles, and close the file. A tile being decoded is
+     * abandoned.
+     */
+    public void close()
+    {
+        closed = true;
+        reader.abort();
+        synchronized(reader) {
+            reader.dispose();
+            try {
+                input.close();
+            }
+            catch(IOException exc) {
+                // nothing more to do
+            }
+        }
+        synchronized(this) {
+            cache.clear();
+            cacheSize = 0;
+        }
+    }
+
+    // ---- support methods ----
+
+    /**
+     * Return the key of a tile in the cache.
+     */
+    private static Long key(int level, int column, int row)
+    {
+        return ((long) level << 48) | ((long) row << 24) | column;
+    }
+
+    /**
+     * Add a decoded tile to the cache, and keep the cache within its
+     * limit.
+     */
+    private synchronized void addToCache(Long key, BufferedImage tile)
+    {
+        if(closed) {
+            return;
+        }
+        cache.put(key, tile);
+        cacheSize += sizeOf(tile);
+        trimCache();
+    }
+
+    /**
+     * Decode a tile from the file. Must be called holding the reader's
+     * lock.
+     */
+    private BufferedImage readTile(int level, int column, int row)
+    {
+        int step = 1 << level;
+        int span = TILE_SIZE << level;
+        int x = column * span;
+        int y = row * span;
+        if(closed || x >= width || y >= height) {
+            return null;
+        }
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(x, y, Math.min(span, width - x),
+                                            Math.min(span, height - y)));
+        param.setSourceSubsampling(step, step, 0, 0);
+        try {
+            BufferedImage tile = reader.read(0, param);
+            // an aborted read returns what was decoded so far
+            return closed ? null : tile;
+        }
+        catch(IOException | RuntimeException exc) {
+            return null;
+        }
+    }
+
+    /**
+     * Drop the least recently used tiles until the cache is within its
+     * limit (but keep at least the newest tile).
+     */
+    private void trimCache()
+    {
+        Iterator<BufferedImage> tiles = cache.values().iterator();
+        while(cacheSize > cacheLimit && cache.size() > 1) {
+            cacheSize -= sizeOf(tiles.next());
+            tiles.remove();
+        }
+    }
+
+    /**
+     * Return the approximate memory used by a tile, in bytes.
+     */
+    private static long sizeOf(BufferedImage tile)
+    {
+        int bits = tile.getColorModel().getPixelSize();
+        return (long) tile.getWidth() * tile.getHeight() * Math.max(1, (bits + 7) / 8);
+    }
+}
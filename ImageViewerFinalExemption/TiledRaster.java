@@ -0,0 +1,325 @@
+import java.util.Arrays;
+
+/**
+ * A TiledRaster is an unchangeable snapshot of the pixels of an image,
+ * divided into square tiles.
+ *
+ * Snapshots share tiles: a snapshot taken of an image after an edit
+ * keeps the very same tile arrays as the snapshot before it wherever the
+ * edit did not change any pixel, and copies only the tiles that changed.
+ * Many snapshots of an image that is edited a little at a time therefore
+ * use little more memory than one, and a snapshot of an image that did
+ * not change at all costs nothing. An OFImage remembers the snapshot it
+ * was last taken in or restored from, and which of its tiles were
+ * written since; only those tiles have to be compared when the next
+ * snapshot is taken.
+ *
+ * Tiles are numbered row by row. Each tile holds its pixels row by row;
+ * the tiles at the right and bottom edges may be smaller than the others.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.0
+ */
+public class TiledRaster
+{
+    // the width and height of a tile, in pixels (a power of two)
+    public static final int TILE_SIZE = 64;
+    // log2 of TILE_SIZE, to find the tile of a pixel
+    public static final int TILE_SHIFT = 6;
+
+    private final int width;
+    private final int height;
+    private final boolean alpha;
+    // the number of tiles in a row and in a column
+    private final int tilesX;
+    private final int tilesY;
+    // the pixels of every tile; never changed once the snapshot is made
+    private final int[][] tiles;
+
+    /**
+     * Create a snapshot from a set of tiles.
+     */
+    private TiledRaster(int width, int height, boolean alpha, int[][] tiles)
+    {
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.tilesX = tileCount(width);
+        this.tilesY = tileCount(height);
+        this.tiles = tiles;
+    }
+
+    /**
+     * Take a snapshot of an image, copying all its pixels.
+     *
+     * @param  image  The image.
+     * @return The snapshot.
+     */
+    public static TiledRaster of(OFImage image)
+    {
+        return snapshot(image, null);
+    }
+
+    /**
+     * Take a snapshot of an array of packed pixels, copying them.
+     *
+     * @param  pixels  The pixels, row by row.
+     * @param  width   The width of the image.
+     * @param  height  The height of the image.
+     * @param  alpha   true if the image has an alpha channel.
+     * @return The snapshot.
+     */
+    public static TiledRaster of(int[] pixels, int width, int height, boolean alpha)
+    {
+        TiledRaster raster = new TiledRaster(width, height, alpha, null);
+        int[][] tiles = new int[raster.getTileCount()][];
+        for(int t = 0; t < tiles.length; t++) {
+            tiles[t] = raster.copyTile(pixels, t);
+        }
+        return new TiledRaster(width, height, alpha, tiles);
+    }
+
+    /**
+     * Take a new snapshot of an image that may have been changed since
+     * this snapshot was taken. Tiles in which no pixel changed are
+     * shared with this snapshot, not copied. If the image is of a
+     * different size, all its pixels are copied.
+     *
+     * @param  image  The image.
+     * @return The new snapshot; this snapshot itself if no pixel changed.
+     */
+    public TiledRaster update(OFImage image)
+    {
+        return snapshot(image, this);
+    }
+
+    /**
+     * Take a snapshot of an image, sharing the unchanged tiles of an
+     * earlier snapshot if one is given.
+     */
+    private static TiledRaster snapshot(OFImage image, TiledRaster base)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean alpha = image.getColorModel().hasAlpha();
+        if(base != null && (base.width != width || base.height != height || base.alpha != alpha)) {
+            base = null;
+        }
+        // tiles the image has not written since it matched the earlier
+        // snapshot need not be compared (this must be asked before the
+        // pixel data is fetched, which forgets it)
+        boolean tracked = base != null && image.getSnapshot() == base;
+        boolean[] skip = null;
+        if(tracked) {
+            skip = new boolean[base.tiles.length];
+            for(int t = 0; t < skip.length; t++) {
+                skip[t] = !image.isTileChanged(t);
+            }
+        }
+        int[] pixels = image.getPixelData();
+        TiledRaster raster = new TiledRaster(width, height, alpha, null);
+        int[][] tiles = new int[raster.getTileCount()][];
+        boolean changed = false;
+        for(int t = 0; t < tiles.length; t++) {
+            if(base != null && (tracked && skip[t] || base.tileEquals(pixels, t))) {
+                tiles[t] = base.tiles[t];
+            }
+            else {
+                tiles[t] = raster.copyTile(pixels, t);
+                changed = true;
+            }
+        }
+        TiledRaster result = changed || base == null ? new TiledRaster(width, height, alpha, tiles) : base;
+        image.setSnapshot(result);
+        return result;
+    }
+
+    /**
+     * Create a snapshot in which some tiles of this one are replaced.
+     *
+     * @param  replaced  New pixels for some tiles, or null for the tiles to
+     *                   keep. The arrays are kept, not copied, and must not
+     *                   be changed afterwards.
+     * @return The new snapshot.
+     */
+    public TiledRaster withTiles(int[][] replaced)
+    {
+        int[][] newTiles = tiles.clone();
+        for(int t = 0; t < newTiles.length; t++) {
+            if(replaced[t] != null) {
+                newTiles[t] = replaced[t];
+            }
+        }
+        return new TiledRaster(width, height, alpha, newTiles);
+    }
+
+    /**
+     * Create a new image with the pixels of this snapshot. The image
+     * remembers this snapshot, so that a snapshot taken of it later only
+     * needs to look at the tiles it changed.
+     *
+     * @return The new image.
+     */
+    public OFImage toImage()
+    {
+        OFImage image = new OFImage(width, height, alpha);
+        copyTo(image.getPixelData());
+        image.setSnapshot(this);
+        return image;
+    }
+
+    /**
+     * @return A new array with all pixels of this snapshot, row by row.
+     */
+    public int[] toPixels()
+    {
+        int[] pixels = new int[width * height];
+        copyTo(pixels);
+        return pixels;
+    }
+
+    /**
+     * Copy all pixels of this snapshot into an array, row by row.
+     */
+    private void copyTo(int[] pixels)
+    {
+        for(int t = 0; t < tiles.length; t++) {
+            int x0 = getTileX(t);
+            int tileWidth = getTileWidth(t);
+            int rows = getTileHeight(t);
+            int index = getTileY(t) * width + x0;
+            for(int row = 0; row < rows; row++) {
+                System.arraycopy(tiles[t], row * tileWidth, pixels, index, tileWidth);
+                index += width;
+            }
+        }
+    }
+
+    /**
+     * Copy one tile out of an array of pixels of this snapshot's size.
+     */
+    private int[] copyTile(int[] pixels, int t)
+    {
+        int tileWidth = getTileWidth(t);
+        int rows = getTileHeight(t);
+        int[] tile = new int[tileWidth * rows];
+        int index = getTileY(t) * width + getTileX(t);
+        for(int row = 0; row < rows; row++) {
+            System.arraycopy(pixels, index, tile, row * tileWidth, tileWidth);
+            index += width;
+        }
+        return tile;
+    }
+
+    /**
+     * Check whether a tile holds the same pixels as the same area of an
+     * array of pixels of this snapshot's size.
+     */
+    private boolean tileEquals(int[] pixels, int t)
+    {
+        int[] tile = tiles[t];
+        int tileWidth = getTileWidth(t);
+        int rows = getTileHeight(t);
+        int index = getTileY(t) * width + getTileX(t);
+        for(int row = 0; row < rows; row++) {
+            int start = row * tileWidth;
+            if(!Arrays.equals(tile, start, start + tileWidth,
+                              pixels, index, index + tileWidth)) {
+                return false;
+            }
+            index += width;
+        }
+        return true;
+    }
+
+    /**
+     * Return the pixels of one tile, row by row. The array is shared with
+     * other snapshots and must not be changed.
+     *
+     * @param  t  The number of the tile.
+     * @return The pixels of the tile.
+     */
+    public int[] getTile(int t)
+    {
+        return tiles[t];
+    }
+
+    /**
+     * @return The number of tiles.
+     */
+    public int getTileCount()
+    {
+        return tilesX * tilesY;
+    }
+
+    /**
+     * @param  t  The number of a tile.
+     * @return The x position of the tile's left edge, in pixels.
+     */
+    public int getTileX(int t)
+    {
+        return (t % tilesX) << TILE_SHIFT;
+    }
+
+    /**
+     * @param  t  The number of a tile.
+     * @return The y position of the tile's top edge, in pixels.
+     */
+    public int getTileY(int t)
+    {
+        return (t / tilesX) << TILE_SHIFT;
+    }
+
+    /**
+     * @param  t  The number of a tile.
+     * @return The width of the tile, in pixels.
+     */
+    public int getTileWidth(int t)
+    {
+        return Math.min(TILE_SIZE, width - getTileX(t));
+    }
+
+    /**
+     * @param  t  The number of a tile.
+     * @return The height of the tile, in pixels.
+     */
+    public int getTileHeight(int t)
+    {
+        return Math.min(TILE_SIZE, height - getTileY(t));
+    }
+
+    /**
+     * @return The width of the image.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return The height of the image.
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * @return true if the image has an alpha channel.
+     */
+    public boolean hasAlpha()
+    {
+        return alpha;
+    }
+
+    /**
+     * Return the number of tiles needed to cover a length.
+     *
+     * @param  length  A width or height, in pixels.
+     * @return The number of tiles in a row or column.
+     */
+    public static int tileCount(int length)
+    {
+        return (length + TILE_SIZE - 1) >> TILE_SHIFT;
+    }
+}
@@ -0,0 +1,217 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A WarpMap describes a geometric distortion of an image: for every
+ * target pixel it says which source position its color comes from.
+ *
+ * The maps used here are separable - the source column depends only on
+ * the target column, and the source row only on the target row - so a
+ * map needs just one entry per column and one per row. Source positions
+ * outside the image are clamped to the nearest edge pixel.
+ *
+ * Maps are expensive to compute (they need trigonometry) but depend only
+ * on the image size and the strength of the effect, so they are cached:
+ * warping a batch of frames of the same size computes the map only once.
+ *
+ * @author Michael Kölling and David J. Barnes.
+ * @version 1.0
+ */
+public class WarpMap
+{
+    // the number of maps kept in the cache
+    private static final int CACHE_SIZE = 8;
+    // fractions of a pixel are stored in 1/256ths
+    private static final int ONE = 256;
+    private static final double TWO_PI = 2 * Math.PI;
+
+    private static final Map<String, WarpMap> cache =
+        new LinkedHashMap<String, WarpMap>(CACHE_SIZE, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, WarpMap> eldest)
+            {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    // nearest-pixel source column for each target column, and row for each row
+    private final int[] column;
+    private final int[] row;
+    // for bilinear sampling: the left/top source pixel and the weight
+    // (0 to ONE) of the right/bottom one
+    private final int[] column0, columnWeight;
+    private final int[] row0, rowWeight;
+    private final int maxRowShift;
+
+    /**
+     * Create a map from the (fractional) source position of every target
+     * column and row.
+     */
+    private WarpMap(double[] sourceX, double[] sourceY, int[] nearestX, int[] nearestY)
+    {
+        int width = sourceX.length;
+        int height = sourceY.length;
+        column = new int[width];
+        column0 = new int[width];
+        columnWeight = new int[width];
+        for(int x = 0; x < width; x++) {
+            column[x] = clamp(nearestX[x], width);
+            int whole = (int) Math.floor(sourceX[x]);
+            column0[x] = whole;
+            columnWeight[x] = (int) Math.round((sourceX[x] - whole) * ONE);
+        }
+        row = new int[height];
+        row0 = new int[height];
+        rowWeight = new int[height];
+        int shift = 0;
+        for(int y = 0; y < height; y++) {
+            row[y] = clamp(nearestY[y], height);
+            int whole = (int) Math.floor(sourceY[y]);
+            row0[y] = whole;
+            rowWeight[y] = (int) Math.round((sourceY[y] - whole) * ONE);
+            shift = Math.max(shift, Math.abs(row[y] - y));
+            shift = Math.max(shift, Math.abs(clamp(whole, height) - y));
+            shift = Math.max(shift, Math.abs(clamp(whole + 1, height) - y));
+        }
+        maxRowShift = shift;
+    }
+
+    /**
+     * Return the fish eye map for an image size, computing it only if it
+     * is not cached yet. Every pixel is moved by strength * sin(2 pi t)
+     * pixels, where t is its relative position along each axis.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param strength The largest displacement, in pixels.
+     * @return The warp map.
+     */
+    public static WarpMap fishEye(int width, int height, double strength)
+    {
+        String key = "fisheye " + width + "x" + height + " " + strength;
+        synchronized(cache) {
+            WarpMap map = cache.get(key);
+            if(map != null) {
+                return map;
+            }
+        }
+
+        double[] sourceX = new double[width];
+        int[] nearestX = new int[width];
+        for(int x = 0; x < width; x++) {
+            double shift = Math.sin(((double) x / width) * TWO_PI) * strength;
+            sourceX[x] = x + shift;
+            nearestX[x] = x + (int) shift;
+        }
+        double[] sourceY = new double[height];
+        int[] nearestY = new int[height];
+        for(int y = 0; y < height; y++) {
+            double shift = Math.sin(((double) y / height) * TWO_PI) * strength;
+            sourceY[y] = y + shift;
+            nearestY[y] = y + (int) shift;
+        }
+        WarpMap map = new WarpMap(sourceX, sourceY, nearestX, nearestY);
+
+        synchronized(cache) {
+            cache.put(key, map);
+        }
+        return map;
+    }
+
+    /**
+     * Return the largest distance (in rows) between a target row and the
+     * source rows it reads. This is the halo a warp filter needs.
+     *
+     * @return The largest vertical displacement.
+     */
+    public int getMaxRowShift()
+    {
+        return maxRowShift;
+    }
+
+    /**
+     * Fill a band of target rows with the nearest source pixel of each
+     * target pixel.
+     *
+     * @param source  The packed source pixels, starting at image row sourceY.
+     * @param sourceY The image row of the first row in source.
+     * @param target  The packed pixels of the image, to be changed.
+     * @param fromY   The first row to change.
+     * @param toY     The row after the last row to change.
+     */
+    public void sampleNearest(int[] source, int sourceY, int[] target, int fromY, int toY)
+    {
+        int width = column.length;
+        for(int y = fromY; y < toY; y++) {
+            int out = y * width;
+            int in = (row[y] - sourceY) * width;
+            for(int x = 0; x < width; x++) {
+                target[out + x] = source[in + column[x]];
+            }
+        }
+    }
+
+    /**
+     * Fill a band of target rows with the bilinear interpolation of the
+     * four source pixels around the source position of each target pixel.
+     *
+     * @param source  The packed source pixels, starting at image row sourceY.
+     * @param sourceY The image row of the first row in source.
+     * @param target  The packed pixels of the image, to be changed.
+     * @param fromY   The first row to change.
+     * @param toY     The row after the last row to change.
+     */
+    public void sampleBilinear(int[] source, int sourceY, int[] target, int fromY, int toY)
+    {
+        int width = column.length;
+        int height = row.length;
+        int[] left = new int[width];
+        int[] right = new int[width];
+        for(int x = 0; x < width; x++) {
+            left[x] = clamp(column0[x], width);
+            right[x] = clamp(column0[x] + 1, width);
+        }
+
+        for(int y = fromY; y < toY; y++) {
+            int out = y * width;
+            int top = (clamp(row0[y], height) - sourceY) * width;
+            int bottom = (clamp(row0[y] + 1, height) - sourceY) * width;
+            int wy = rowWeight[y];
+            for(int x = 0; x < width; x++) {
+                int wx = columnWeight[x];
+                target[out + x] = blend(blend(source[top + left[x]], source[top + right[x]], wx),
+                                        blend(source[bottom + left[x]], source[bottom + right[x]], wx),
+                                        wy);
+            }
+        }
+    }
+
+    /**
+     * Mix two packed pixels, channel by channel.
+     * @param a The first pixel.
+     * @param b The second pixel.
+     * @param weight The weight of b, from 0 (only a) to ONE (only b).
+     * @return The mixed pixel.
+     */
+    private static int blend(int a, int b, int weight)
+    {
+        int keep = ONE - weight;
+        int red = (OFImage.red(a) * keep + OFImage.red(b) * weight + ONE / 2) >> 8;
+        int green = (OFImage.green(a) * keep + OFImage.green(b) * weight + ONE / 2) >> 8;
+        int blue = (OFImage.blue(a) * keep + OFImage.blue(b) * weight + ONE / 2) >> 8;
+        return OFImage.rgb(red, green, blue);
+    }
+
+    /**
+     * Limit a position to the range 0 to size - 1.
+     */
+    private static int clamp(int position, int size)
+    {
+        if(position < 0) {
+            return 0;
+        }
+        if(position >= size) {
+            return size - 1;
+        }
+        return position;
+    }
+}